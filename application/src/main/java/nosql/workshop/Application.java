@@ -1,9 +1,18 @@
 package nosql.workshop;
 
 import net.codestory.http.WebServer;
+import net.codestory.http.convert.TypeConvert;
 import net.codestory.http.injection.GuiceAdapter;
+import nosql.workshop.metrics.Metrics;
+import nosql.workshop.metrics.MetricsFilter;
+import nosql.workshop.resources.ApiJson;
+import nosql.workshop.resources.MetricsResource;
 import nosql.workshop.resources.TownRessource;
 import nosql.workshop.resources.InstallationResource;
+import nosql.workshop.services.ElasticsearchClientProvider;
+import nosql.workshop.services.ImportMonitor;
+import nosql.workshop.services.MongoDB;
+import nosql.workshop.services.StatsService;
 
 /**
  * Point d'entrée de l'application. Permet de démarrer le serveur web afin d'exposer l'API et les pages HTML.
@@ -11,14 +20,32 @@ import nosql.workshop.resources.InstallationResource;
 public class Application {
 
     public static void main(String[] args) {
+        // Configuration JSON partagée avec les réponses écrites au fil de l'eau
+        TypeConvert.overrideMapper(ApiJson.MAPPER);
+
+        GuiceAdapter iocAdapter = new GuiceAdapter(new ApplicationModule());
         WebServer webServer = new WebServer();
         webServer.configure(routes -> {
-                    routes.setIocAdapter(new GuiceAdapter(new ApplicationModule()));
+                    routes.setIocAdapter(iocAdapter);
+                    routes.filter(new MetricsFilter(iocAdapter.get(Metrics.class))
+                            .addResource("/api/installations", InstallationResource.class)
+                            .addResource("/api/towns", TownRessource.class)
+                            .addResource("/api/metrics", MetricsResource.class));
                     routes.add("/api/installations", InstallationResource.class);
                     routes.add("/api/towns", TownRessource.class);
+                    routes.add("/api/metrics", MetricsResource.class);
                 }
         );
         webServer.start();
+
+        // Libération des connexions à l'arrêt du serveur
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            webServer.stop();
+            iocAdapter.get(StatsService.class).close();
+            iocAdapter.get(ImportMonitor.class).close();
+            iocAdapter.get(MongoDB.class).close();
+            iocAdapter.get(ElasticsearchClientProvider.class).close();
+        }));
     }
 
 }
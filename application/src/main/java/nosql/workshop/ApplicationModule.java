@@ -1,24 +1,90 @@
 package nosql.workshop;
 
 import com.google.inject.AbstractModule;
+import com.google.inject.Singleton;
 import com.google.inject.name.Names;
+import nosql.workshop.metrics.Metrics;
+import nosql.workshop.services.ElasticsearchClientProvider;
+import nosql.workshop.services.ElasticsearchSearchEngine;
+import nosql.workshop.services.GeoSearchEngine;
+import nosql.workshop.services.ImportMonitor;
+import nosql.workshop.services.InMemoryGeoSearchEngine;
 import nosql.workshop.services.InstallationService;
 import nosql.workshop.services.MongoDB;
+import nosql.workshop.services.MongoGeoSearchEngine;
+import nosql.workshop.services.MongoSearchEngine;
+import nosql.workshop.services.SearchEngine;
 import nosql.workshop.services.SearchService;
+import nosql.workshop.services.StatsService;
+import nosql.workshop.services.TownGazetteer;
+import nosql.workshop.services.TownService;
+import org.elasticsearch.client.Client;
+
+import static nosql.workshop.services.ElasticsearchClientProvider.*;
+import static nosql.workshop.services.GeoSearchEngine.*;
+import static nosql.workshop.services.ImportMonitor.IMPORTS_POLL_INTERVAL;
+import static nosql.workshop.services.InstallationService.CACHE_SIZE;
+import static nosql.workshop.services.InstallationService.CACHE_TTL;
+import static nosql.workshop.services.MongoDB.*;
 import static nosql.workshop.services.SearchService.*;
+import static nosql.workshop.services.StatsService.STATS_MAX_AGE;
+import static nosql.workshop.services.TownService.SUGGEST_CACHE_SIZE;
+import static nosql.workshop.services.TownService.SUGGEST_CACHE_TTL;
+import static nosql.workshop.services.TownService.TOWNS_BACKEND;
 
 
 /**
  * Module Guice permettant de définir les classes pouvant être injectées.
+ * <p>
+ * Les paramètres de connexion peuvent être surchargés par des propriétés système portant le même nom
+ * (ex : <code>-Dmongo.pool.size=50</code>).
  */
 public class ApplicationModule extends AbstractModule {
 
     @Override
     protected void configure() {
-        bind(MongoDB.class);
-        bind(InstallationService.class);
-        bind(SearchService.class);
-        bindConstant().annotatedWith(Names.named(ES_HOST)).to("localhost");
-        bindConstant().annotatedWith(Names.named(ES_TRANSPORT_PORT)).to(9300);
+        bind(Metrics.class).in(Singleton.class);
+        bind(MongoDB.class).in(Singleton.class);
+        bind(InstallationService.class).in(Singleton.class);
+        bind(ImportMonitor.class).in(Singleton.class);
+        bind(StatsService.class).in(Singleton.class);
+        bind(ElasticsearchClientProvider.class).in(Singleton.class);
+        bind(Client.class).toProvider(ElasticsearchClientProvider.class).in(Singleton.class);
+        bind(SearchService.class).in(Singleton.class);
+        bind(TownService.class).in(Singleton.class);
+        bind(TownGazetteer.class).in(Singleton.class);
+        if (MEMORY_ENGINE.equals(System.getProperty(GEOSEARCH_ENGINE, MONGO_ENGINE))) {
+            bind(GeoSearchEngine.class).to(InMemoryGeoSearchEngine.class).in(Singleton.class);
+        } else {
+            bind(GeoSearchEngine.class).to(MongoGeoSearchEngine.class);
+        }
+        if (SearchEngine.MONGO_ENGINE.equals(System.getProperty(SearchEngine.SEARCH_ENGINE, SearchEngine.ELASTICSEARCH_ENGINE))) {
+            bind(SearchEngine.class).to(MongoSearchEngine.class);
+        } else {
+            bind(SearchEngine.class).to(ElasticsearchSearchEngine.class);
+        }
+        bindConstant().annotatedWith(Names.named(ES_CLUSTER_NAME)).to(System.getProperty(ES_CLUSTER_NAME, "elasticsearch"));
+        bindConstant().annotatedWith(Names.named(ES_HOSTS)).to(System.getProperty(ES_HOSTS, "localhost:9300"));
+        bindConstant().annotatedWith(Names.named(ES_SNIFF)).to(Boolean.getBoolean(ES_SNIFF));
+        bindConstant().annotatedWith(Names.named(ES_PING_INTERVAL)).to(Integer.getInteger(ES_PING_INTERVAL, 5));
+        bindConstant().annotatedWith(Names.named(ES_CONNECTIONS_PER_NODE)).to(Integer.getInteger(ES_CONNECTIONS_PER_NODE, 6));
+        bindConstant().annotatedWith(Names.named(SEARCH_TYPE)).to(System.getProperty(SEARCH_TYPE, "query_then_fetch"));
+        bindConstant().annotatedWith(Names.named(SEARCH_EXPLAIN)).to(Boolean.getBoolean(SEARCH_EXPLAIN));
+
+        bindConstant().annotatedWith(Names.named(MONGO_HOST)).to(System.getProperty(MONGO_HOST, "localhost"));
+        bindConstant().annotatedWith(Names.named(MONGO_PORT)).to(Integer.getInteger(MONGO_PORT, 27017));
+        bindConstant().annotatedWith(Names.named(MONGO_POOL_SIZE)).to(Integer.getInteger(MONGO_POOL_SIZE, 100));
+        bindConstant().annotatedWith(Names.named(MONGO_WAIT_QUEUE_MULTIPLIER)).to(Integer.getInteger(MONGO_WAIT_QUEUE_MULTIPLIER, 5));
+        bindConstant().annotatedWith(Names.named(MONGO_MAX_WAIT_TIME)).to(Integer.getInteger(MONGO_MAX_WAIT_TIME, 10000));
+        bindConstant().annotatedWith(Names.named(MONGO_CONNECT_TIMEOUT)).to(Integer.getInteger(MONGO_CONNECT_TIMEOUT, 5000));
+        bindConstant().annotatedWith(Names.named(MONGO_SOCKET_TIMEOUT)).to(Integer.getInteger(MONGO_SOCKET_TIMEOUT, 30000));
+
+        bindConstant().annotatedWith(Names.named(IMPORTS_POLL_INTERVAL)).to(Integer.getInteger(IMPORTS_POLL_INTERVAL, 10));
+        bindConstant().annotatedWith(Names.named(STATS_MAX_AGE)).to(Integer.getInteger(STATS_MAX_AGE, 60));
+        bindConstant().annotatedWith(Names.named(CACHE_SIZE)).to(Integer.getInteger(CACHE_SIZE, 10000));
+        bindConstant().annotatedWith(Names.named(CACHE_TTL)).to(Integer.getInteger(CACHE_TTL, 300));
+        bindConstant().annotatedWith(Names.named(SUGGEST_CACHE_SIZE)).to(Integer.getInteger(SUGGEST_CACHE_SIZE, 10000));
+        bindConstant().annotatedWith(Names.named(SUGGEST_CACHE_TTL)).to(Integer.getInteger(SUGGEST_CACHE_TTL, 3600));
+        bindConstant().annotatedWith(Names.named(TOWNS_BACKEND)).to(System.getProperty(TOWNS_BACKEND, TownService.ELASTICSEARCH_BACKEND));
     }
 }
@@ -0,0 +1,133 @@
+package nosql.workshop.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées à précision relative constante, sur le principe de HdrHistogram.
+ * <p>
+ * Chaque puissance de deux (en nanosecondes) est découpée en {@value #SUB_BUCKETS} intervalles égaux : une durée est
+ * donc rangée à moins de 1/{@value #SUB_BUCKETS} près (3 %), de la microseconde à la minute. Les intervalles sont
+ * alloués une fois pour toutes : l'enregistrement d'une durée n'alloue rien et ne prend aucun verrou.
+ * <p>
+ * Les percentiles sont calculés à la lecture, en parcourant les intervalles ; ils peuvent être légèrement
+ * incohérents avec le nombre d'appels si des durées sont enregistrées pendant le parcours.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Plus grande puissance de deux mesurée (2^36 ns, soit environ 68 s) ; les durées supérieures sont rangées dans
+     * le dernier intervalle.
+     */
+    private static final int MAX_EXPONENT = 35;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Enregistre la durée d'un appel.
+     *
+     * @param startNanos la valeur de {@link System#nanoTime()} au début de l'appel.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param nanos la durée, en nanosecondes.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketIndex(Math.min(value, MAX_VALUE)));
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanMillis() {
+        long calls = count.sum();
+        return calls == 0 ? 0 : (double) totalNanos.sum() / calls / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxMillis() {
+        return (double) maxNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Retourne la durée en dessous de laquelle se trouve une proportion donnée des appels.
+     *
+     * @param quantile la proportion, entre 0 et 1 (ex : <code>0.99</code>).
+     * @return la borne haute de l'intervalle contenant le percentile, en nanosecondes, ou <code>0</code> si aucune
+     * durée n'a été enregistrée.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long cumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return Math.min(highestValue(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    public double getMillisAtQuantile(double quantile) {
+        return (double) getValueAtQuantile(quantile) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Les {@value #SUB_BUCKETS} premières valeurs ont chacune leur intervalle ; au-delà, l'intervalle est donné par la
+     * position du bit de poids fort et les {@value #SUB_BUCKET_BITS} bits suivants.
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,66 @@
+package nosql.workshop.metrics;
+
+import net.codestory.http.payload.StreamingOutput;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Réponse écrite au fil de l'eau, signalant la fin de son écriture à {@link MetricsFilter}.
+ * <p>
+ * Le contenu d'une telle réponse n'est produit qu'après le retour des filtres : la durée de la requête, et son
+ * éventuelle erreur, ne sont connues qu'une fois la réponse écrite.
+ */
+public final class MeasuredOutput implements StreamingOutput {
+
+    private final StreamingOutput output;
+
+    private Consumer<Throwable> listener;
+    private boolean written;
+    private Throwable error;
+
+    public MeasuredOutput(StreamingOutput output) {
+        this.output = output;
+    }
+
+    @Override
+    public void write(OutputStream stream) throws IOException {
+        Throwable failure = null;
+        try {
+            output.write(stream);
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            written(failure);
+        }
+    }
+
+    /**
+     * Enregistre l'action à exécuter une fois la réponse écrite, immédiatement si elle l'est déjà.
+     *
+     * @param listener l'action, recevant l'erreur d'écriture ou <code>null</code>.
+     */
+    public void whenWritten(Consumer<Throwable> listener) {
+        synchronized (this) {
+            if (!written) {
+                this.listener = listener;
+                return;
+            }
+        }
+        listener.accept(error);
+    }
+
+    private void written(Throwable failure) {
+        Consumer<Throwable> current;
+        synchronized (this) {
+            written = true;
+            error = failure;
+            current = listener;
+        }
+        if (current != null) {
+            current.accept(failure);
+        }
+    }
+}
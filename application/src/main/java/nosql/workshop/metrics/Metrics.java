@@ -0,0 +1,197 @@
+package nosql.workshop.metrics;
+
+import com.google.inject.Singleton;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registre des mesures de l'application, exposées au format texte de Prometheus.
+ * <p>
+ * Les mesures sont créées une fois, au démarrage, puis gardées par leurs utilisateurs : l'enregistrement d'une
+ * requête ou d'un appel ne fait aucune recherche dans le registre et n'alloue rien.
+ * <ul>
+ * <li>{@link Route} : nombre de requêtes, nombre d'erreurs et histogramme des durées d'une route de l'API ;</li>
+ * <li>{@link #timer(String, String)} : histogramme des durées d'une opération sur MongoDB ou Elasticsearch ;</li>
+ * <li>{@link #counter(String, String, DoubleSupplier)} et {@link #gauge(String, String, DoubleSupplier)} : valeurs
+ * lues au moment de l'export (compteurs des caches, âge des statistiques...).</li>
+ * </ul>
+ */
+@Singleton
+public class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    private final Map<String, Route> routes = new ConcurrentSkipListMap<>();
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, Sampled> sampled = new ConcurrentSkipListMap<>();
+
+    /**
+     * Retourne les mesures d'une route, en les créant à la première demande.
+     *
+     * @param method   la méthode HTTP.
+     * @param template le modèle de l'URL (ex : <code>/api/installations/:numero</code>).
+     * @return les mesures de la route.
+     */
+    public Route route(String method, String template) {
+        return routes.computeIfAbsent(template + ' ' + method, key -> new Route(method, template));
+    }
+
+    /**
+     * Retourne l'histogramme des durées d'une opération sur un backend, en le créant à la première demande.
+     *
+     * @param backend   le backend appelé (<code>mongo</code>, <code>elasticsearch</code>...).
+     * @param operation l'opération.
+     * @return l'histogramme, à garder par l'appelant.
+     */
+    public LatencyHistogram timer(String backend, String operation) {
+        return timers.computeIfAbsent(backend + ' ' + operation, key -> new Timer(backend, operation)).latency;
+    }
+
+    /**
+     * Déclare un compteur dont la valeur est lue au moment de l'export.
+     *
+     * @param name  le nom de la mesure, terminé par <code>_total</code>.
+     * @param help  la description de la mesure.
+     * @param value la lecture de la valeur.
+     */
+    public void counter(String name, String help, DoubleSupplier value) {
+        sampled.put(name, new Sampled("counter", help, value));
+    }
+
+    /**
+     * Déclare une jauge dont la valeur est lue au moment de l'export.
+     *
+     * @param name  le nom de la mesure.
+     * @param help  la description de la mesure.
+     * @param value la lecture de la valeur.
+     */
+    public void gauge(String name, String help, DoubleSupplier value) {
+        sampled.put(name, new Sampled("gauge", help, value));
+    }
+
+    /**
+     * Écrit toutes les mesures au format texte de Prometheus (version 0.0.4).
+     *
+     * @return les mesures.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+
+        header(out, "http_requests_total", "counter", "Nombre de requêtes HTTP par route.");
+        for (Route route : routes.values()) {
+            sample(out, "http_requests_total", route.labels, route.requests.sum());
+        }
+        header(out, "http_request_errors_total", "counter", "Nombre de requêtes HTTP en erreur (exception ou code >= 400) par route.");
+        for (Route route : routes.values()) {
+            sample(out, "http_request_errors_total", route.labels, route.errors.sum());
+        }
+        header(out, "http_request_duration_seconds", "summary", "Durée des requêtes HTTP par route.");
+        for (Route route : routes.values()) {
+            summary(out, "http_request_duration_seconds", route.labels, route.latency);
+        }
+
+        header(out, "backend_call_duration_seconds", "summary", "Durée des appels à MongoDB et Elasticsearch par opération.");
+        for (Timer timer : timers.values()) {
+            summary(out, "backend_call_duration_seconds", timer.labels, timer.latency);
+        }
+
+        for (Map.Entry<String, Sampled> entry : sampled.entrySet()) {
+            Sampled metric = entry.getValue();
+            header(out, entry.getKey(), metric.type, metric.help);
+            sample(out, entry.getKey(), "", metric.value.getAsDouble());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram latency) {
+        for (double quantile : QUANTILES) {
+            String quantileLabels = labels + ",quantile=\"" + quantile + "\"";
+            sample(out, name, quantileLabels, seconds(latency.getValueAtQuantile(quantile)));
+        }
+        sample(out, name + "_sum", labels, seconds(latency.getTotalNanos()));
+        sample(out, name + "_count", labels, latency.getCount());
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.9f", value));
+        }
+        out.append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * Mesures d'une route de l'API.
+     */
+    public static final class Route {
+        private final String labels;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Route(String method, String template) {
+            this.labels = label("method", method) + ',' + label("route", template);
+        }
+
+        /**
+         * Enregistre une requête terminée.
+         *
+         * @param startNanos la valeur de {@link System#nanoTime()} au début de la requête.
+         * @param error      la requête s'est terminée en erreur.
+         */
+        public void record(long startNanos, boolean error) {
+            latency.recordSince(startNanos);
+            requests.increment();
+            if (error) {
+                errors.increment();
+            }
+        }
+    }
+
+    private static final class Timer {
+        private final String labels;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Timer(String backend, String operation) {
+            this.labels = label("backend", backend) + ',' + label("operation", operation);
+        }
+    }
+
+    private static final class Sampled {
+        private final String type;
+        private final String help;
+        private final DoubleSupplier value;
+
+        private Sampled(String type, String help, DoubleSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
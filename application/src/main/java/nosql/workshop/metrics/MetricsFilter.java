@@ -0,0 +1,192 @@
+package nosql.workshop.metrics;
+
+import net.codestory.http.Context;
+import net.codestory.http.annotations.Get;
+import net.codestory.http.annotations.Post;
+import net.codestory.http.filters.Filter;
+import net.codestory.http.filters.PayloadSupplier;
+import net.codestory.http.payload.Payload;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filtre mesurant chaque requête : nombre de requêtes, nombre d'erreurs et durée, par route.
+ * <p>
+ * Les routes sont relevées au démarrage sur les annotations {@link Get} et {@link Post} des ressources déclarées ;
+ * une requête est rattachée au modèle de sa route (<code>/api/installations/:numero</code>) et non à son URL, pour
+ * que le nombre de séries reste borné. Les URL ne correspondant à aucune route (pages statiques, erreurs 404) sont
+ * regroupées sous {@value #OTHER_ROUTE}, avec leur méthode HTTP si elle est standard.
+ * <p>
+ * Une requête se termine au calcul de sa réponse, ou à la fin de son écriture pour une réponse écrite au fil de
+ * l'eau ({@link MeasuredOutput}) : une erreur pendant l'écriture est alors comptée comme une erreur.
+ * <p>
+ * La recherche de la route compare l'URL aux modèles caractère par caractère, sans découper l'URL : le filtre
+ * n'alloue rien pour une réponse synchrone.
+ */
+public class MetricsFilter implements Filter {
+
+    public static final String OTHER_ROUTE = "other";
+
+    /**
+     * Méthodes gardées telles quelles pour les URL sans route ; les autres sont regroupées sous {@value #OTHER_ROUTE},
+     * pour que le nombre de séries reste borné.
+     */
+    private static final Set<String> STANDARD_METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+
+    private final Metrics metrics;
+    private final List<RouteTemplate> templates = new ArrayList<>();
+    private final Map<String, Metrics.Route> otherRoutes = new ConcurrentHashMap<>();
+
+    public MetricsFilter(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Déclare les routes d'une ressource.
+     *
+     * @param prefix   le préfixe sous lequel la ressource est déclarée.
+     * @param resource la classe de la ressource.
+     * @return ce filtre.
+     */
+    public MetricsFilter addResource(String prefix, Class<?> resource) {
+        for (Method method : resource.getMethods()) {
+            Get get = method.getAnnotation(Get.class);
+            if (get != null) {
+                addRoute("GET", join(prefix, get.value()));
+            }
+            Post post = method.getAnnotation(Post.class);
+            if (post != null) {
+                addRoute("POST", join(prefix, post.value()));
+            }
+        }
+        // Les segments fixes l'emportent sur les paramètres : /random avant /:numero
+        templates.sort(Comparator.comparingInt(template -> template.parameterCount));
+        return this;
+    }
+
+    private void addRoute(String method, String template) {
+        templates.add(new RouteTemplate(method, template, metrics.route(method, template)));
+    }
+
+    @Override
+    public Payload apply(String uri, Context context, PayloadSupplier nextFilter) throws Exception {
+        long start = System.nanoTime();
+        Metrics.Route route = match(uri, context.method());
+
+        Payload payload;
+        try {
+            payload = nextFilter.get();
+        } catch (Exception | Error e) {
+            route.record(start, true);
+            throw e;
+        }
+
+        if (payload.rawContent() instanceof CompletableFuture) {
+            // Réponse asynchrone : la requête se termine avec le calcul de la réponse
+            ((CompletableFuture<?>) payload.rawContent()).whenComplete((result, error) -> {
+                if (error == null && result instanceof Payload) {
+                    record(route, start, (Payload) result);
+                } else {
+                    route.record(start, error != null);
+                }
+            });
+        } else {
+            record(route, start, payload);
+        }
+        return payload;
+    }
+
+    private static void record(Metrics.Route route, long start, Payload payload) {
+        if (payload.rawContent() instanceof MeasuredOutput) {
+            // Réponse écrite au fil de l'eau : la requête se termine avec l'écriture de la réponse
+            ((MeasuredOutput) payload.rawContent()).whenWritten(error ->
+                    route.record(start, error != null || payload.isError()));
+        } else {
+            route.record(start, payload.isError());
+        }
+    }
+
+    private Metrics.Route match(String uri, String method) {
+        for (int i = 0; i < templates.size(); i++) {
+            RouteTemplate template = templates.get(i);
+            if (template.method.equals(method) && template.matches(uri)) {
+                return template.route;
+            }
+        }
+        return otherRoute(method);
+    }
+
+    private Metrics.Route otherRoute(String method) {
+        String label = STANDARD_METHODS.contains(method) ? method : OTHER_ROUTE;
+        Metrics.Route route = otherRoutes.get(label);
+        if (route == null) {
+            route = otherRoutes.computeIfAbsent(label, key -> metrics.route(key, OTHER_ROUTE));
+        }
+        return route;
+    }
+
+    private static String join(String prefix, String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return prefix;
+        }
+        return path.startsWith("/") ? prefix + path : prefix + '/' + path;
+    }
+
+    /**
+     * Modèle d'URL découpé en segments ; un segment commençant par <code>:</code> accepte toute valeur non vide.
+     */
+    private static final class RouteTemplate {
+        private final String[] segments;
+        private final int parameterCount;
+        private final String method;
+        private final Metrics.Route route;
+
+        private RouteTemplate(String method, String template, Metrics.Route route) {
+            this.segments = template.substring(1).split("/");
+            int parameters = 0;
+            for (String segment : segments) {
+                if (segment.startsWith(":")) {
+                    parameters++;
+                }
+            }
+            this.parameterCount = parameters;
+            this.method = method;
+            this.route = route;
+        }
+
+        private boolean matches(String uri) {
+            int position = 0;
+            int length = uri.length();
+            for (String segment : segments) {
+                if (position >= length || uri.charAt(position) != '/') {
+                    return false;
+                }
+                position++;
+                int end = uri.indexOf('/', position);
+                if (end < 0) {
+                    end = length;
+                }
+                if (segment.startsWith(":")) {
+                    if (end == position) {
+                        return false;
+                    }
+                } else if (end - position != segment.length() || !uri.regionMatches(position, segment, 0, segment.length())) {
+                    return false;
+                }
+                position = end;
+            }
+            // Une barre finale est tolérée : /api/installations/
+            return position == length || (position == length - 1 && uri.charAt(position) == '/');
+        }
+    }
+}
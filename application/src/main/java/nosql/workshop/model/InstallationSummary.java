@@ -0,0 +1,62 @@
+package nosql.workshop.model;
+
+import org.jongo.marshall.jackson.oid.Id;
+
+/**
+ * Vue réduite d'une installation sportive : numéro, nom et coordonnées, suffisants pour l'affichage sur une carte.
+ */
+public class InstallationSummary {
+
+    @Id
+    private String numero;
+    private String nom;
+    private Location location;
+
+    public static InstallationSummary of(Installation installation) {
+        InstallationSummary summary = new InstallationSummary();
+        summary.numero = installation.getNumero();
+        summary.nom = installation.getNom();
+        if (installation.getLocation() != null) {
+            summary.location = new Location();
+            summary.location.coordinates = installation.getLocation().getCoordinates();
+        }
+        return summary;
+    }
+
+    public String getNumero() {
+        return numero;
+    }
+
+    public void setNumero(String numero) {
+        this.numero = numero;
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public void setNom(String nom) {
+        this.nom = nom;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public static class Location {
+
+        private double[] coordinates;
+
+        public double[] getCoordinates() {
+            return coordinates;
+        }
+
+        public void setCoordinates(double[] coordinates) {
+            this.coordinates = coordinates;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package nosql.workshop.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
+
+/**
+ * Configuration JSON des réponses de l'API.
+ * <p>
+ * Le même mapper est installé dans code-story (<code>TypeConvert.overrideMapper</code>) et utilisé pour les réponses
+ * écrites au fil de l'eau : les valeurs (dates notamment) sont formatées de la même façon sur toutes les routes.
+ */
+public final class ApiJson {
+
+    /**
+     * Mapper des réponses, configuré comme celui de code-story : types <code>java.time</code> et dates au format ISO.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .registerModule(new JSR310Module())
+            .configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+    private ApiJson() {
+    }
+}
@@ -3,21 +3,38 @@ package nosql.workshop.resources;
 import com.google.inject.Inject;
 import net.codestory.http.Context;
 import net.codestory.http.Query;
-import net.codestory.http.Response;
 import net.codestory.http.annotations.Get;
+import net.codestory.http.errors.BadRequestException;
+import net.codestory.http.payload.Payload;
 import nosql.workshop.model.Installation;
 import nosql.workshop.model.stats.InstallationsStats;
+import nosql.workshop.services.GeoCursor;
+import nosql.workshop.services.GeoSearchEngine;
 import nosql.workshop.services.InstallationService;
+import nosql.workshop.services.Projection;
+import nosql.workshop.services.SearchEngine;
 import nosql.workshop.services.SearchService;
+import nosql.workshop.services.StatsService;
 
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static net.codestory.http.errors.NotFoundException.notFoundIfNull;
 
 /**
  * Resource permettant de gérer l'accès à l'API pour les Installations.
+ * <p>
+ * Les listes (<code>/</code>, <code>/search</code>, <code>/geosearch</code>) acceptent un paramètre
+ * <code>fields</code> : <code>summary</code> pour la vue réduite (numéro, nom, coordonnées), ou une liste de champs
+ * séparés par des virgules (ex : <code>fields=nom,adresse</code>).
  */
 public class InstallationResource {
 
@@ -25,41 +42,127 @@ public class InstallationResource {
     public static final int DEFAULT_PAGE_SIZE = 10;
     public static final int MAX_PAGE_SIZE = 50;
 
+    /**
+     * Valeur du paramètre <code>cursor</code> demandant la première page en mode curseur.
+     */
+    public static final String FIRST_CURSOR = "*";
+
+    public static final int DEFAULT_GEOSEARCH_LIMIT = 200;
+    public static final int MAX_GEOSEARCH_LIMIT = 1000;
+
+    public static final int DEFAULT_NEAREST_COUNT = 10;
+    public static final int MAX_NEAREST_COUNT = 50;
+
     private final InstallationService installationService;
-    private final SearchService searchService;
+    private final SearchEngine searchEngine;
+    private final StatsService statsService;
+    private final GeoSearchEngine geoSearchEngine;
 
     @Inject
-    public InstallationResource(InstallationService installationService, SearchService searchService) {
+    public InstallationResource(InstallationService installationService, SearchEngine searchEngine, StatsService statsService, GeoSearchEngine geoSearchEngine) {
         this.installationService = installationService;
-        this.searchService = searchService;
+        this.searchEngine = searchEngine;
+        this.statsService = statsService;
+        this.geoSearchEngine = geoSearchEngine;
     }
 
     @Get("/")
-    public List<Installation> list(Context context) {
-        // Nombre total d'installations
-        long count = installationService.count();
-
+    public Payload list(Context context) {
         // Gestion des query params
         Query query = context.query();
         int pageQuery = query.getInteger("page");
         int pageSizeQuery = query.getInteger("pageSize");
+        String cursor = query.get("cursor");
         int page = (pageQuery > 0) ? pageQuery : DEFAULT_PAGE;
         int pageSize = (pageSizeQuery > 0 && pageSizeQuery <= MAX_PAGE_SIZE) ? pageSizeQuery : DEFAULT_PAGE_SIZE;
+        Projection<?> projection = projection(query);
+
+        if (cursor != null && !cursor.isEmpty()) {
+            return listByCursor(context, cursor, pageSize, projection);
+        }
+
+        // Nombre total d'installations (valeur en cache, suffisante pour les liens)
+        long count = installationService.estimatedCount();
 
         // Gestion des headers de la réponse
-        Response response = context.response();
         List<String> links = new ArrayList<>();
         if (page > 1) {
-            links.add("<" + context.request().uri() + "?page=" + (page - 1) + "&pageSize=" + pageSize + ">; rel=\"prev\"");
+            links.add("<" + context.request().uri() + "?page=" + (page - 1) + "&pageSize=" + pageSize + fieldsParameter(query) + ">; rel=\"prev\"");
         }
         if (page * pageSize < count) {
-            links.add("<" + context.request().uri() + "?page=" + (page + 1) + "&pageSize=" + pageSize + ">; rel=\"next\"");
+            links.add("<" + context.request().uri() + "?page=" + (page + 1) + "&pageSize=" + pageSize + fieldsParameter(query) + ">; rel=\"next\"");
         }
+
+        // Les liens étant connus avant la lecture, les installations sont écrites directement depuis le curseur
+        Payload payload = JsonStreams.array(this.installationService.list(page, pageSize, projection), projection.getFields());
         if (!links.isEmpty()) {
-            response.setHeader("Link", links.stream().collect(Collectors.joining(", ")));
+            payload = payload.withHeader("Link", links.stream().collect(Collectors.joining(", ")));
+        }
+        return payload;
+    }
+
+    /**
+     * Pagination par curseur : le lien <code>next</code> porte un jeton opaque dérivé du dernier numéro retourné.
+     * Aucun comptage n'est nécessaire, une page pleine suffit à annoncer la suivante.
+     */
+    private <T> Payload listByCursor(Context context, String cursor, int pageSize, Projection<T> projection) {
+        String after = FIRST_CURSOR.equals(cursor) ? null : decodeCursor(cursor);
+        List<T> installations = this.installationService.listAfter(after, pageSize, projection);
+
+        Payload payload = JsonStreams.array(installations.iterator(), projection.getFields());
+        if (installations.size() == pageSize) {
+            String next = encodeCursor(projection.numero(installations.get(installations.size() - 1)));
+            payload = payload.withHeader("Link", "<" + context.request().uri() + "?cursor=" + next + "&pageSize=" + pageSize
+                    + fieldsParameter(context.query()) + ">; rel=\"next\"");
+        }
+        return payload;
+    }
+
+    /**
+     * Export de toutes les installations au format NDJSON (un document par ligne), écrit au fil de la lecture.
+     */
+    @Get("/export")
+    public Payload export() {
+        return JsonStreams.lines(installationService.export());
+    }
+
+    private static String encodeCursor(String numero) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(numero.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    private static Projection<?> projection(Query query) {
+        try {
+            return Projection.parse(query.get("fields"));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    /**
+     * Reporte le paramètre <code>fields</code> dans les liens de pagination.
+     */
+    private static String fieldsParameter(Query query) {
+        String fields = query.get("fields");
+        if (fields == null || fields.isEmpty()) {
+            return "";
         }
+        return "&fields=" + urlEncode(fields);
+    }
 
-        return this.installationService.list(page, pageSize);
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value == null ? "" : value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Get("/:numero")
@@ -73,28 +176,105 @@ public class InstallationResource {
         return installationService.random();
     }
 
+    /**
+     * Recherche full-text, par pertinence décroissante, avec le moteur configuré (Elasticsearch ou MongoDB).
+     * Les résultats sont paginés par <code>page</code> et <code>pageSize</code>. La réponse est asynchrone : avec
+     * Elasticsearch, le thread du serveur est libéré pendant la recherche.
+     */
     @Get("/search")
-    public List<Installation> search(Context context) {
-        String searchQuery = context.query().get("query");
-        return installationService.search(searchQuery);
+    public CompletableFuture<Payload> search(Context context) {
+        Query query = context.query();
+        String searchQuery = query.get("query");
+        int pageQuery = query.getInteger("page");
+        int pageSizeQuery = query.getInteger("pageSize");
+        int page = (pageQuery > 0) ? pageQuery : DEFAULT_PAGE;
+        int pageSize = (pageSizeQuery > 0 && pageSizeQuery <= MAX_PAGE_SIZE) ? pageSizeQuery : DEFAULT_PAGE_SIZE;
+        int from = pageSize * (page - 1);
+        if (searchQuery == null || searchQuery.trim().isEmpty() || from + pageSize > SearchService.MAX_RESULT_WINDOW) {
+            throw new BadRequestException();
+        }
+        Projection<?> projection = projection(query);
+
+        // Lus avant la réponse asynchrone, le contexte de la requête n'étant plus garanti ensuite
+        String uri = context.request().uri();
+        String fieldsParameter = fieldsParameter(query);
+
+        return searchEngine.searchAsync(searchQuery, from, pageSize, projection).thenApply(installations -> {
+            Payload payload = JsonStreams.array(installations.iterator(), projection.getFields());
+            if (installations.size() == pageSize && from + 2 * pageSize <= SearchService.MAX_RESULT_WINDOW) {
+                payload = payload.withHeader("Link", "<" + uri + "?query=" + urlEncode(searchQuery) + "&page=" + (page + 1)
+                        + "&pageSize=" + pageSize + fieldsParameter + ">; rel=\"next\"");
+            }
+            return payload;
+        });
+    }
+
+    /**
+     * Temps de réponse du moteur de recherche utilisé depuis le démarrage.
+     */
+    @Get("/search/latency")
+    public Map<String, Object> searchLatency() {
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("engine", searchEngine.getName());
+        latency.put("count", searchEngine.getLatency().getCount());
+        latency.put("meanMillis", searchEngine.getLatency().getMeanMillis());
+        latency.put("p50Millis", searchEngine.getLatency().getMillisAtQuantile(0.5));
+        latency.put("p99Millis", searchEngine.getLatency().getMillisAtQuantile(0.99));
+        latency.put("p999Millis", searchEngine.getLatency().getMillisAtQuantile(0.999));
+        latency.put("maxMillis", searchEngine.getLatency().getMaxMillis());
+        return latency;
     }
 
+    /**
+     * Recherche géographique paginée : au plus <code>limit</code> installations sont retournées, et le lien
+     * <code>next</code> porte un curseur vers les suivantes. La réponse est écrite au fil de l'eau.
+     */
     @Get("/geosearch")
-    public List<Installation> geosearch(Context context) {
+    public Payload geosearch(Context context) {
         Query query = context.query();
         double lat = query.getDouble("lat");
         double lng = query.getDouble("lng");
         double distance = query.getDouble("distance");
-        return installationService.geosearch(lat, lng, distance);
+        int limitQuery = query.getInteger("limit");
+        int limit = (limitQuery > 0 && limitQuery <= MAX_GEOSEARCH_LIMIT) ? limitQuery : DEFAULT_GEOSEARCH_LIMIT;
+        String cursor = query.get("cursor");
+        Projection<?> projection = projection(query);
+
+        GeoCursor after = (cursor == null || cursor.isEmpty()) ? GeoCursor.first() : decodeGeoCursor(cursor);
+        List<Installation> installations = geoSearchEngine.geosearch(lat, lng, distance, after, limit, projection);
+
+        Payload payload = JsonStreams.array(installations.stream().map(projection::fromInstallation).iterator(), projection.getFields());
+        if (installations.size() == limit) {
+            String next = encodeCursor(GeoCursor.after(lat, lng, after, installations).encode());
+            payload = payload.withHeader("Link", "<" + context.request().uri() + "?lat=" + lat + "&lng=" + lng + "&distance=" + distance
+                    + "&limit=" + limit + "&cursor=" + next + fieldsParameter(query) + ">; rel=\"next\"");
+        }
+        return payload;
+    }
+
+    private static GeoCursor decodeGeoCursor(String cursor) {
+        try {
+            return GeoCursor.decode(decodeCursor(cursor));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException();
+        }
+    }
+
+    @Get("/nearest")
+    public List<Installation> nearest(Context context) {
+        Query query = context.query();
+        double lat = query.getDouble("lat");
+        double lng = query.getDouble("lng");
+        int countQuery = query.getInteger("count");
+        int count = (countQuery > 0 && countQuery <= MAX_NEAREST_COUNT) ? countQuery : DEFAULT_NEAREST_COUNT;
+        return geoSearchEngine.nearest(lat, lng, count);
     }
 
     @Get("/stats")
-    public InstallationsStats stats() {
-        InstallationsStats stats = new InstallationsStats();
-        stats.setTotalCount(installationService.count());
-        stats.setCountByActivity(installationService.countByActivity());
-        stats.setInstallationWithMaxEquipments(installationService.installationWithMaxEquipments());
-        stats.setAverageEquipmentsPerInstallation(installationService.averageEquipmentsPerInstallation());
+    public InstallationsStats stats(Context context) {
+        InstallationsStats stats = statsService.stats();
+        // Âge de l'instantané servi, en secondes
+        context.response().setHeader("Age", String.valueOf(statsService.snapshotAge() / 1000));
         return stats;
     }
 }
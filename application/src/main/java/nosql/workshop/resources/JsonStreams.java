@@ -0,0 +1,127 @@
+package nosql.workshop.resources;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import net.codestory.http.payload.Payload;
+import net.codestory.http.payload.StreamingOutput;
+import nosql.workshop.metrics.MeasuredOutput;
+import nosql.workshop.model.Installation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Réponses JSON écrites au fil de l'eau : chaque élément est sérialisé directement dans la réponse HTTP, sans
+ * construire le document complet en mémoire.
+ * <p>
+ * Les éléments sont lus pendant l'écriture ; un curseur MongoDB peut donc être passé tel quel, il est fermé une
+ * fois la réponse écrite. La durée de la requête mesurée par les métriques inclut cette écriture
+ * ({@link MeasuredOutput}).
+ * <p>
+ * Une liste de champs peut restreindre ceux des {@link Installation} sérialisés (paramètre <code>fields</code>).
+ */
+final class JsonStreams {
+
+    static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+    static final String NDJSON_CONTENT_TYPE = "application/x-ndjson;charset=UTF-8";
+
+    private static final String FIELDS_FILTER = "fields";
+
+    // Copie du mapper des autres réponses, pour un formatage identique
+    private static final ObjectMapper OBJECT_MAPPER = ApiJson.MAPPER.copy()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false)
+            .addMixIn(Installation.class, FieldsFilterMixin.class);
+
+    private static final ObjectWriter ALL_FIELDS_WRITER = OBJECT_MAPPER.writer(
+            new SimpleFilterProvider().addFilter(FIELDS_FILTER, SimpleBeanPropertyFilter.serializeAllExcept(Collections.<String>emptySet())));
+
+    private JsonStreams() {
+    }
+
+    /**
+     * Écrit les éléments sous la forme d'un tableau JSON.
+     *
+     * @param items les éléments, lus au moment de l'écriture de la réponse.
+     * @return la réponse.
+     */
+    static Payload array(Iterator<?> items) {
+        return array(items, null);
+    }
+
+    /**
+     * Écrit les éléments sous la forme d'un tableau JSON, en ne gardant que certains champs des installations.
+     *
+     * @param items  les éléments, lus au moment de l'écriture de la réponse.
+     * @param fields les propriétés JSON à écrire (<code>_id</code> pour le numéro), ou <code>null</code> pour tous les champs.
+     * @return la réponse.
+     */
+    static Payload array(Iterator<?> items, Set<String> fields) {
+        ObjectWriter writer = writer(fields);
+        StreamingOutput output = stream -> {
+            try (JsonGenerator generator = createGenerator(stream)) {
+                generator.writeStartArray();
+                while (items.hasNext()) {
+                    writer.writeValue(generator, items.next());
+                }
+                generator.writeEndArray();
+            } finally {
+                close(items);
+            }
+        };
+        return new Payload(JSON_CONTENT_TYPE, new MeasuredOutput(output));
+    }
+
+    /**
+     * Écrit les éléments au format NDJSON : un document JSON par ligne.
+     *
+     * @param items les éléments, lus au moment de l'écriture de la réponse.
+     * @return la réponse.
+     */
+    static Payload lines(Iterator<?> items) {
+        StreamingOutput output = stream -> {
+            try (JsonGenerator generator = createGenerator(stream)) {
+                // Pas de séparateur entre les documents, le retour à la ligne est écrit explicitement
+                generator.setPrettyPrinter(new MinimalPrettyPrinter(""));
+                while (items.hasNext()) {
+                    ALL_FIELDS_WRITER.writeValue(generator, items.next());
+                    generator.writeRaw('\n');
+                }
+            } finally {
+                close(items);
+            }
+        };
+        return new Payload(NDJSON_CONTENT_TYPE, new MeasuredOutput(output));
+    }
+
+    private static ObjectWriter writer(Set<String> fields) {
+        if (fields == null) {
+            return ALL_FIELDS_WRITER;
+        }
+        return OBJECT_MAPPER.writer(new SimpleFilterProvider().addFilter(FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields)));
+    }
+
+    private static JsonGenerator createGenerator(OutputStream stream) throws IOException {
+        return OBJECT_MAPPER.getFactory().createGenerator(stream);
+    }
+
+    private static void close(Iterator<?> items) throws IOException {
+        if (items instanceof Closeable) {
+            ((Closeable) items).close();
+        }
+    }
+
+    @JsonFilter(FIELDS_FILTER)
+    private abstract static class FieldsFilterMixin {
+    }
+}
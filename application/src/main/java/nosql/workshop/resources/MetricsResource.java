@@ -0,0 +1,24 @@
+package nosql.workshop.resources;
+
+import com.google.inject.Inject;
+import net.codestory.http.annotations.Get;
+import net.codestory.http.payload.Payload;
+import nosql.workshop.metrics.Metrics;
+
+/**
+ * Expose les mesures de l'application au format texte de Prometheus.
+ */
+public class MetricsResource {
+
+    private final Metrics metrics;
+
+    @Inject
+    public MetricsResource(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Get("/")
+    public Payload metrics() {
+        return new Payload(Metrics.CONTENT_TYPE, metrics.toPrometheus());
+    }
+}
@@ -3,29 +3,32 @@ package nosql.workshop.resources;
 import com.google.inject.Inject;
 import net.codestory.http.annotations.Get;
 import nosql.workshop.model.suggest.TownSuggest;
-import nosql.workshop.services.SearchService;
+import nosql.workshop.services.TownService;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * API REST pour les villes
+ * <p>
+ * Les réponses sont asynchrones : le thread du serveur est libéré pendant l'appel à Elasticsearch.
  * Created by Chris on 12/02/15.
  */
 public class TownRessource {
-    private final SearchService searchService;
+    private final TownService townService;
 
     @Inject
-    public TownRessource(SearchService searchService) {
-        this.searchService = searchService;
+    public TownRessource(TownService townService) {
+        this.townService = townService;
     }
 
     @Get("suggest/:text")
-    public List<TownSuggest> suggest(String text) {
-        return searchService.suggestTownName(text);
+    public CompletableFuture<List<TownSuggest>> suggest(String text) {
+        return townService.suggestAsync(text);
     }
 
     @Get("location/:townName")
-    public Double[] getLocation(String townName){
-        return searchService.getTownLocation(townName);
+    public CompletableFuture<Double[]> getLocation(String townName){
+        return townService.getLocationAsync(townName);
     }
 }
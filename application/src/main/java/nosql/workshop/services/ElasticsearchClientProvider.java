@@ -0,0 +1,88 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+
+/**
+ * Fournit le client Elasticsearch unique de l'application, partagé par tous les services.
+ * <p>
+ * Les propriétés sont les mêmes que celles des jobs du batch (<code>ElasticsearchClients</code>) : nom du cluster,
+ * liste des noeuds <code>hote:port</code>, découverte des autres noeuds (<i>sniffing</i>), intervalle de vérification
+ * des noeuds et nombre de connexions par noeud. Le client est créé au premier usage et fermé par {@link #close()}.
+ */
+@Singleton
+public class ElasticsearchClientProvider implements Provider<Client> {
+
+    public static final String ES_CLUSTER_NAME = "es.cluster.name";
+    public static final String ES_HOSTS = "es.hosts";
+    public static final String ES_SNIFF = "es.sniff";
+    public static final String ES_PING_INTERVAL = "es.pingInterval";
+    public static final String ES_CONNECTIONS_PER_NODE = "es.connectionsPerNode";
+
+    private static final int DEFAULT_PORT = 9300;
+
+    private final String clusterName;
+    private final String hosts;
+    private final boolean sniff;
+    private final int pingInterval;
+    private final int connectionsPerNode;
+
+    private TransportClient client;
+
+    /**
+     * @param clusterName        le nom du cluster.
+     * @param hosts              les noeuds, <code>hote:port</code> séparés par des virgules.
+     * @param sniff              la découverte des autres noeuds du cluster.
+     * @param pingInterval       l'intervalle de vérification des noeuds, en secondes.
+     * @param connectionsPerNode le nombre de connexions vers chaque noeud pour les requêtes.
+     */
+    @Inject
+    public ElasticsearchClientProvider(@Named(ES_CLUSTER_NAME) String clusterName,
+                                       @Named(ES_HOSTS) String hosts,
+                                       @Named(ES_SNIFF) boolean sniff,
+                                       @Named(ES_PING_INTERVAL) int pingInterval,
+                                       @Named(ES_CONNECTIONS_PER_NODE) int connectionsPerNode) {
+        this.clusterName = clusterName;
+        this.hosts = hosts;
+        this.sniff = sniff;
+        this.pingInterval = pingInterval;
+        this.connectionsPerNode = connectionsPerNode;
+    }
+
+    @Override
+    public synchronized Client get() {
+        if (client == null) {
+            Settings settings = ImmutableSettings.settingsBuilder()
+                    .put("cluster.name", clusterName)
+                    .put("client.transport.sniff", sniff)
+                    .put("client.transport.ping_interval", pingInterval + "s")
+                    .put("transport.connections_per_node.reg", connectionsPerNode)
+                    .build();
+
+            client = new TransportClient(settings);
+            for (String host : hosts.split(",")) {
+                String[] hostAndPort = host.trim().split(":");
+                int port = hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : DEFAULT_PORT;
+                client.addTransportAddress(new InetSocketTransportAddress(hostAndPort[0], port));
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Ferme le client, s'il a été créé.
+     */
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+}
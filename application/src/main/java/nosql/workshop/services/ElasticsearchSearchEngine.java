@@ -0,0 +1,42 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Recherche full-text par Elasticsearch.
+ */
+@Singleton
+public class ElasticsearchSearchEngine implements SearchEngine {
+
+    private final SearchService searchService;
+
+    @Inject
+    public ElasticsearchSearchEngine(SearchService searchService) {
+        this.searchService = searchService;
+    }
+
+    @Override
+    public <T> List<T> search(String searchQuery, int from, int size, Projection<T> projection) {
+        return searchService.search(searchQuery, from, size, projection);
+    }
+
+    @Override
+    public <T> CompletableFuture<List<T>> searchAsync(String searchQuery, int from, int size, Projection<T> projection) {
+        return searchService.searchAsync(searchQuery, from, size, projection);
+    }
+
+    @Override
+    public String getName() {
+        return ELASTICSEARCH_ENGINE;
+    }
+
+    @Override
+    public LatencyHistogram getLatency() {
+        return searchService.getSearchLatency();
+    }
+}
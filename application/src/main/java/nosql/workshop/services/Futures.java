@@ -0,0 +1,28 @@
+package nosql.workshop.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Utilitaires pour les variantes synchrones des méthodes asynchrones.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    /**
+     * Attend le résultat d'un traitement asynchrone. Une erreur d'exécution est relancée telle quelle, sans l'enveloppe
+     * {@link CompletionException}.
+     *
+     * @param future le traitement.
+     * @return son résultat.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+}
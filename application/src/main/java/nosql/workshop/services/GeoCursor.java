@@ -0,0 +1,129 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Installation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Position dans les résultats d'une recherche géographique, triés par distance.
+ * <p>
+ * La page suivante commence à la distance de la dernière installation retournée ; les installations déjà retournées
+ * à cette distance (à {@value #TOLERANCE} m près, les distances étant recalculées) sont exclues. Aucun
+ * <code>skip</code> n'est nécessaire, quelle que soit la profondeur de la page.
+ * <p>
+ * Beaucoup d'installations partagent les mêmes coordonnées (jusqu'à 280 au même point) : un groupe d'installations
+ * équidistantes peut s'étendre sur plusieurs pages. Les exclusions de la page précédente sont donc reportées tant
+ * qu'elles restent dans la marge de la nouvelle distance minimale ; le curseur grandit avec le groupe, mais chaque
+ * installation n'est retournée qu'une fois et la pagination se termine.
+ */
+public final class GeoCursor {
+
+    /**
+     * Marge, en mètres, entre la distance calculée ici et celle calculée par le moteur de recherche.
+     */
+    static final double TOLERANCE = 1;
+
+    private static final String SEPARATOR = ",";
+
+    private final double minDistance;
+    private final Set<String> excluded;
+
+    private GeoCursor(double minDistance, Set<String> excluded) {
+        this.minDistance = minDistance;
+        this.excluded = excluded;
+    }
+
+    /**
+     * @return le curseur de la première page.
+     */
+    public static GeoCursor first() {
+        return new GeoCursor(0, Collections.emptySet());
+    }
+
+    /**
+     * Calcule le curseur de la page suivant une page de résultats.
+     *
+     * @param lat      latitude du point de départ de la recherche.
+     * @param lng      longitude du point de départ de la recherche.
+     * @param previous le curseur ayant produit la page.
+     * @param page     la page retournée, triée par distance et non vide.
+     * @return le curseur de la page suivante.
+     */
+    public static GeoCursor after(double lat, double lng, GeoCursor previous, List<Installation> page) {
+        double last = distance(lat, lng, page.get(page.size() - 1));
+        // La distance minimale ne recule jamais : les exclusions sont toujours à moins de TOLERANCE au-delà
+        double minDistance = Math.max(previous.minDistance, last - TOLERANCE);
+        Set<String> excluded = new HashSet<>();
+        // Tant que la nouvelle distance minimale ne dépasse pas les exclusions précédentes, elles restent exclues
+        if (minDistance <= previous.minDistance + TOLERANCE) {
+            excluded.addAll(previous.excluded);
+        }
+        for (Installation installation : page) {
+            if (distance(lat, lng, installation) >= minDistance) {
+                excluded.add(installation.getNumero());
+            }
+        }
+        return new GeoCursor(minDistance, excluded);
+    }
+
+    private static double distance(double lat, double lng, Installation installation) {
+        double[] coordinates = installation.getLocation().getCoordinates();
+        return SpatialIndex.distance(lat, lng, coordinates[1], coordinates[0]);
+    }
+
+    /**
+     * @return la distance minimale des résultats, en mètres.
+     */
+    public double getMinDistance() {
+        return minDistance;
+    }
+
+    /**
+     * @return les numéros des installations déjà retournées à la distance minimale.
+     */
+    public Set<String> getExcluded() {
+        return excluded;
+    }
+
+    /**
+     * Indique si un résultat appartient aux pages suivant ce curseur.
+     *
+     * @param id       le numéro de l'installation.
+     * @param distance sa distance au point de départ, en mètres.
+     * @return <code>true</code> si le résultat n'a pas encore été retourné.
+     */
+    public boolean accepts(String id, double distance) {
+        return distance >= minDistance && !excluded.contains(id);
+    }
+
+    /**
+     * @return la forme textuelle du curseur : la distance minimale suivie des numéros exclus.
+     */
+    public String encode() {
+        StringBuilder encoded = new StringBuilder(Double.toString(minDistance));
+        for (String id : excluded) {
+            encoded.append(SEPARATOR).append(id);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Relit un curseur produit par {@link #encode()}.
+     *
+     * @param encoded la forme textuelle du curseur.
+     * @return le curseur.
+     * @throws IllegalArgumentException si le curseur est mal formé.
+     */
+    public static GeoCursor decode(String encoded) {
+        String[] parts = encoded.split(SEPARATOR);
+        double minDistance = Double.parseDouble(parts[0]);
+        if (!(minDistance >= 0)) {
+            throw new IllegalArgumentException("Invalid distance: " + parts[0]);
+        }
+        return new GeoCursor(minDistance, new HashSet<>(Arrays.asList(parts).subList(1, parts.length)));
+    }
+}
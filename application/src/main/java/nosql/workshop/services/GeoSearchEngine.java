@@ -0,0 +1,41 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Installation;
+
+import java.util.List;
+
+/**
+ * Moteur de recherche géographique des installations.
+ * <p>
+ * Le moteur utilisé est choisi dans <code>ApplicationModule</code> par la propriété
+ * {@value #GEOSEARCH_ENGINE} : {@value #MONGO_ENGINE} (par défaut) ou {@value #MEMORY_ENGINE}.
+ */
+public interface GeoSearchEngine {
+
+    String GEOSEARCH_ENGINE = "geosearch.engine";
+    String MONGO_ENGINE = "mongo";
+    String MEMORY_ENGINE = "memory";
+
+    /**
+     * Recherche les installations dans un rayon donné, page par page.
+     *
+     * @param lat        latitude du point de départ.
+     * @param lng        longitude du point de départ.
+     * @param distance   rayon de recherche, en mètres.
+     * @param after      la position de la page dans les résultats.
+     * @param limit      le nombre maximum d'installations retournées.
+     * @param projection les champs utiles ; le moteur peut en lire davantage, les coordonnées étant toujours lues.
+     * @return les installations dans la zone, de la plus proche à la plus éloignée.
+     */
+    List<Installation> geosearch(double lat, double lng, double distance, GeoCursor after, int limit, Projection<?> projection);
+
+    /**
+     * Recherche les installations les plus proches d'un point.
+     *
+     * @param lat   latitude du point de départ.
+     * @param lng   longitude du point de départ.
+     * @param count le nombre d'installations recherchées.
+     * @return les installations, de la plus proche à la plus éloignée.
+     */
+    List<Installation> nearest(double lat, double lng, int count);
+}
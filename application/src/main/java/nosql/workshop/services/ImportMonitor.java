@@ -0,0 +1,94 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import org.jongo.MongoCollection;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Surveille les imports réalisés par les batchs afin de prévenir l'application que les données ont changé.
+ * <p>
+ * À la fin d'un import, le batch enregistre sa date dans la collection {@value #COLLECTION_NAME} ; ce document est
+ * relu périodiquement et les listeners sont notifiés dès qu'il change.
+ */
+@Singleton
+public class ImportMonitor {
+
+    /**
+     * Nom de la collection MongoDB contenant les dates d'import.
+     */
+    public static final String COLLECTION_NAME = "imports";
+
+    public static final String IMPORTS_POLL_INTERVAL = "imports.pollInterval";
+
+    private final MongoCollection imports;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "import-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Date lastImport;
+
+    /**
+     * @param mongoDB      la connexion MongoDB.
+     * @param pollInterval l'intervalle entre deux vérifications, en secondes.
+     */
+    @Inject
+    public ImportMonitor(MongoDB mongoDB, @Named(IMPORTS_POLL_INTERVAL) int pollInterval) {
+        this.imports = mongoDB.getJongo().getCollection(COLLECTION_NAME);
+        this.lastImport = readLastImport();
+        scheduler.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Enregistre un listener appelé (depuis le thread de surveillance) après chaque nouvel import.
+     *
+     * @param listener le listener.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Retourne la date du dernier import des installations.
+     *
+     * @return la date du dernier import, ou <code>null</code> si aucun import n'a été enregistré.
+     */
+    public Date lastImport() {
+        return lastImport;
+    }
+
+    /**
+     * Arrête la surveillance.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void poll() {
+        try {
+            Date date = readLastImport();
+            if (date != null && !date.equals(lastImport)) {
+                lastImport = date;
+                listeners.forEach(Runnable::run);
+            }
+        } catch (RuntimeException e) {
+            // La surveillance ne doit pas s'arrêter sur une erreur ponctuelle (base indisponible...)
+            e.printStackTrace();
+        }
+    }
+
+    private Date readLastImport() {
+        return imports.findOne("{_id: #}", InstallationService.COLLECTION_NAME)
+                .map(result -> (Date) result.get("date"));
+    }
+}
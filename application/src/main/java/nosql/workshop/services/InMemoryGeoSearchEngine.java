@@ -0,0 +1,88 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.model.Installation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Recherche géographique sur un {@link SpatialIndex} en mémoire.
+ * <p>
+ * L'index ne contient que les numéros et les coordonnées ; les installations trouvées sont lues par
+ * {@link InstallationService#getAll(List)}, donc depuis son cache, les absentes en une seule requête. L'index est reconstruit en tâche de fond après
+ * chaque import, l'ancien restant utilisé pendant la reconstruction.
+ */
+@Singleton
+public class InMemoryGeoSearchEngine implements GeoSearchEngine {
+
+    private final InstallationService installationService;
+    private final ScheduledExecutorService rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "spatial-index-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile SpatialIndex index;
+
+    @Inject
+    public InMemoryGeoSearchEngine(InstallationService installationService, ImportMonitor importMonitor) {
+        this.installationService = installationService;
+        this.index = buildIndex();
+        importMonitor.addListener(() -> rebuilder.execute(this::rebuild));
+    }
+
+    @Override
+    public List<Installation> geosearch(double lat, double lng, double distance, GeoCursor after, int limit, Projection<?> projection) {
+        // Les installations viennent du cache, entières : la projection n'est appliquée qu'à la sérialisation
+        return toInstallations(index.withinDistance(lat, lng, distance), after, limit);
+    }
+
+    @Override
+    public List<Installation> nearest(double lat, double lng, int count) {
+        return toInstallations(index.nearest(lat, lng, count), GeoCursor.first(), count);
+    }
+
+    /**
+     * Retourne l'index courant.
+     *
+     * @return l'index spatial.
+     */
+    public SpatialIndex getIndex() {
+        return index;
+    }
+
+    private List<Installation> toInstallations(SpatialIndex.Result result, GeoCursor after, int limit) {
+        List<Installation> installations = new ArrayList<>(Math.min(result.size(), limit));
+        int i = 0;
+        // Une installation supprimée depuis la construction de l'index n'est pas trouvée : les suivantes la remplacent
+        while (installations.size() < limit && i < result.size()) {
+            List<String> numeros = new ArrayList<>(limit - installations.size());
+            for (; i < result.size() && numeros.size() < limit - installations.size(); i++) {
+                if (after.accepts(result.id(i), result.distance(i))) {
+                    numeros.add(result.id(i));
+                }
+            }
+            installations.addAll(installationService.getAll(numeros));
+        }
+        return installations;
+    }
+
+    private void rebuild() {
+        try {
+            index = buildIndex();
+        } catch (RuntimeException e) {
+            // L'index précédent reste utilisé
+            e.printStackTrace();
+        }
+    }
+
+    private SpatialIndex buildIndex() {
+        SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        installationService.forEachLocation(builder::add);
+        return builder.build();
+    }
+}
@@ -1,21 +1,36 @@
 package nosql.workshop.services;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import nosql.workshop.metrics.LatencyHistogram;
+import nosql.workshop.metrics.Metrics;
 import nosql.workshop.model.Installation;
 import nosql.workshop.model.stats.Average;
 import nosql.workshop.model.stats.CountByActivity;
 import org.jongo.Aggregate;
+import org.jongo.Find;
 import org.jongo.MongoCollection;
+import org.jongo.MongoCursor;
 
-import java.lang.reflect.Array;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * Service permettant de manipuler les installations sportives.
+ * <p>
+ * La durée de chaque requête MongoDB est mesurée séparément (<code>backend="mongo"</code>). Les listes parcourues
+ * au fil de l'eau ({@link #list(int, int, Projection)}, {@link #export()}) ne le sont pas : la requête n'est
+ * exécutée qu'à l'écriture de la réponse, et sa durée est comprise dans celle de la route HTTP, mesurée jusqu'à
+ * la fin de l'écriture.
  */
 public class InstallationService {
 
@@ -24,48 +39,300 @@ public class InstallationService {
      */
     public static final String COLLECTION_NAME = "installations";
 
+    public static final String CACHE_SIZE = "installations.cache.size";
+    public static final String CACHE_TTL = "installations.cache.ttl";
+
+    /**
+     * Index géographique utilisé par <code>$near</code>.
+     */
+    private static final String LOCATION_INDEX = "{'location': '2dsphere'}";
+
+    /**
+     * Nombre de documents lus par aller-retour avec MongoDB lors d'un export.
+     */
+    private static final int EXPORT_BATCH_SIZE = 1000;
+
+    /**
+     * Champ recevant le score des recherches <code>$text</code> (ignoré à la désérialisation).
+     */
+    private static final String TEXT_SCORE_FIELD = "score";
+
+    /**
+     * Durée de validité des identifiants mis en cache pour le tirage aléatoire.
+     */
+    private static final long RANDOM_IDS_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Nombre de tirages tentés avant de recharger les identifiants (cas d'une installation supprimée entre-temps).
+     */
+    private static final int RANDOM_MAX_ATTEMPTS = 3;
+
+    /**
+     * Durée de validité du nombre total d'installations mis en cache.
+     */
+    private static final long COUNT_TTL = TimeUnit.SECONDS.toMillis(30);
+
     private final MongoCollection installations;
+    private final LocalCache<String, Installation> cache;
 
+    private final LatencyHistogram findOneLatency;
+    private final LatencyHistogram findManyLatency;
+    private final LatencyHistogram listAfterLatency;
+    private final LatencyHistogram randomIdsLatency;
+    private final LatencyHistogram countLatency;
+    private final LatencyHistogram maxEquipmentsLatency;
+    private final LatencyHistogram countByActivityLatency;
+    private final LatencyHistogram averageEquipmentsLatency;
+    private final LatencyHistogram searchLatency;
+    private final LatencyHistogram geosearchLatency;
+    private final LatencyHistogram nearestLatency;
+
+    private volatile String[] randomIds = new String[0];
+    private volatile long randomIdsLoadedAt;
+
+    private volatile long cachedCount;
+    private volatile long cachedCountLoadedAt;
+
+    /**
+     * @param mongoDB       la connexion MongoDB.
+     * @param importMonitor la surveillance des imports, qui vide les caches.
+     * @param metrics       le registre des mesures.
+     * @param cacheSize     le nombre maximum d'installations gardées en cache.
+     * @param cacheTtl      la durée de vie d'une installation en cache, en secondes.
+     */
     @Inject
-    public InstallationService(MongoDB mongoDB) throws UnknownHostException {
+    public InstallationService(MongoDB mongoDB, ImportMonitor importMonitor, Metrics metrics,
+                               @Named(CACHE_SIZE) int cacheSize, @Named(CACHE_TTL) int cacheTtl) {
         this.installations = mongoDB.getJongo().getCollection(COLLECTION_NAME);
+        this.cache = new LocalCache<>(cacheSize, TimeUnit.SECONDS.toMillis(cacheTtl));
+
+        this.findOneLatency = metrics.timer("mongo", "findOne");
+        this.findManyLatency = metrics.timer("mongo", "findMany");
+        this.listAfterLatency = metrics.timer("mongo", "listAfter");
+        this.randomIdsLatency = metrics.timer("mongo", "randomIds");
+        this.countLatency = metrics.timer("mongo", "count");
+        this.maxEquipmentsLatency = metrics.timer("mongo", "aggregate.installationWithMaxEquipments");
+        this.countByActivityLatency = metrics.timer("mongo", "aggregate.countByActivity");
+        this.averageEquipmentsLatency = metrics.timer("mongo", "aggregate.averageEquipmentsPerInstallation");
+        this.searchLatency = metrics.timer("mongo", "search");
+        this.geosearchLatency = metrics.timer("mongo", "geosearch");
+        this.nearestLatency = metrics.timer("mongo", "nearest");
+        metrics.counter("installations_cache_hits_total", "Lectures d'installations servies par le cache.", cache::hits);
+        metrics.counter("installations_cache_misses_total", "Lectures d'installations absentes du cache.", cache::misses);
+        metrics.counter("installations_cache_evictions_total", "Installations évincées du cache.", cache::evictions);
+        metrics.gauge("installations_cache_size", "Nombre d'installations en cache.", cache::size);
+        ensureIndexes();
+
+        importMonitor.addListener(() -> {
+            ensureIndexes();
+            cache.invalidateAll();
+            randomIdsLoadedAt = 0;
+        });
+    }
+
+    /**
+     * Crée les index nécessaires aux requêtes, une fois au démarrage puis après chaque import (sans effet si l'index
+     * existe déjà).
+     */
+    private void ensureIndexes() {
+        this.installations.ensureIndex(LOCATION_INDEX);
     }
 
     /**
      * Retourne une installation étant donné son numéro.
+     * <p>
+     * Les installations lues sont gardées en cache ; le cache est vidé après chaque import.
      *
      * @param numero le numéro de l'installation.
      * @return l'installation correspondante, ou <code>null</code> si non trouvée.
      */
     public Installation get(String numero) {
-        return this.installations.findOne("{_id: \"" + numero + "\"}").as(Installation.class);
+        return cache.get(numero, this::load);
+    }
+
+    private Installation load(String numero) {
+        long start = System.nanoTime();
+        try {
+            return this.installations.findOne("{_id: #}", numero).as(Installation.class);
+        } finally {
+            findOneLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Retourne plusieurs installations étant donné leurs numéros.
+     * <p>
+     * Les installations absentes du cache sont lues en une seule requête (<code>$in</code>), puis mises en cache.
+     *
+     * @param numeros les numéros des installations.
+     * @return les installations trouvées, dans l'ordre des numéros ; les numéros inconnus sont ignorés.
+     */
+    public List<Installation> getAll(List<String> numeros) {
+        Map<String, Installation> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String numero : numeros) {
+            Installation installation = cache.getIfPresent(numero);
+            if (installation != null) {
+                found.put(numero, installation);
+            } else {
+                missing.add(numero);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long generation = cache.generation();
+            long start = System.nanoTime();
+            try {
+                for (Installation installation : this.installations.find("{_id: {$in: #}}", missing).as(Installation.class)) {
+                    cache.put(installation.getNumero(), installation, generation);
+                    found.put(installation.getNumero(), installation);
+                }
+            } finally {
+                findManyLatency.recordSince(start);
+            }
+        }
+
+        List<Installation> installs = new ArrayList<>(found.size());
+        for (String numero : numeros) {
+            Installation installation = found.get(numero);
+            if (installation != null) {
+                installs.add(installation);
+            }
+        }
+        return installs;
+    }
+
+    /**
+     * Retourne le cache des installations, pour consulter ses compteurs.
+     *
+     * @return le cache des installations.
+     */
+    public LocalCache<String, Installation> getCache() {
+        return cache;
+    }
+
+    /**
+     * Retourne les durées des recherches full-text sur MongoDB.
+     *
+     * @return l'histogramme des durées.
+     */
+    public LatencyHistogram getSearchLatency() {
+        return searchLatency;
     }
 
     /**
      * Retourne la liste des installations.
+     * <p>
+     * Les installations sont lues au fur et à mesure du parcours du curseur, qui doit être fermé.
      *
-     * @param page     la page à retourner.
-     * @param pageSize le nombre d'installations par page.
-     * @return la liste des installations.
+     * @param page       la page à retourner.
+     * @param pageSize   le nombre d'installations par page.
+     * @param projection les champs à lire.
+     * @return le curseur sur les installations de la page.
      */
-    public List<Installation> list(int page, int pageSize) {
-        ArrayList<Installation> installs = new ArrayList<>();
-        Iterator<Installation> i = this.installations.find().skip(pageSize * (page - 1)).limit(pageSize).as(Installation.class);
-        while (i.hasNext()) {
-            installs.add(i.next());
+    public <T> MongoCursor<T> list(int page, int pageSize, Projection<T> projection) {
+        return project(this.installations.find(), projection.getMongoProjection())
+                .skip(pageSize * (page - 1))
+                .limit(pageSize)
+                .as(projection.getType());
+    }
+
+    /**
+     * Parcourt toutes les installations, triées par numéro, pour un export complet.
+     * <p>
+     * Le curseur doit être fermé.
+     *
+     * @return le curseur sur toutes les installations.
+     */
+    public MongoCursor<Installation> export() {
+        return this.installations.find()
+                .sort("{_id: 1}")
+                .with(cursor -> cursor.batchSize(EXPORT_BATCH_SIZE))
+                .as(Installation.class);
+    }
+
+    /**
+     * Retourne la page d'installations qui suit un numéro donné (pagination par curseur).
+     * <p>
+     * Contrairement à {@link #list(int, int, Projection)}, le coût ne dépend pas de la profondeur de la page : la requête
+     * s'appuie sur l'index de <code>_id</code> au lieu d'un <code>skip</code>.
+     *
+     * @param after    le numéro de la dernière installation de la page précédente, ou <code>null</code> pour la
+     *                 première page.
+     * @param pageSize   le nombre d'installations par page.
+     * @param projection les champs à lire.
+     * @return la liste des installations, triées par numéro.
+     */
+    public <T> List<T> listAfter(String after, int pageSize, Projection<T> projection) {
+        long start = System.nanoTime();
+        ArrayList<T> installs = new ArrayList<>();
+        Find find = after == null ? this.installations.find() : this.installations.find("{_id: {$gt: #}}", after);
+        Iterator<T> i = project(find, projection.getMongoProjection())
+                .sort("{_id: 1}")
+                .limit(pageSize)
+                .as(projection.getType());
+        try {
+            while (i.hasNext()) {
+                installs.add(i.next());
+            }
+        } finally {
+            listAfterLatency.recordSince(start);
         }
         return installs;
     }
 
     /**
      * Retourne une installation aléatoirement.
+     * <p>
+     * Le tirage se fait parmi les identifiants mis en cache (rechargés périodiquement), puis l'installation est lue
+     * par son <code>_id</code> : la collection n'est jamais chargée entièrement en mémoire.
      *
-     * @return une installation.
+     * @return une installation, ou <code>null</code> si la collection est vide.
      */
     public Installation random() {
-        long count = count();
-        int random = new Random().nextInt((int) count);
-        return list(1, (int) count).get(random);
+        String[] ids = null;
+        for (int attempt = 0; attempt < RANDOM_MAX_ATTEMPTS; attempt++) {
+            ids = randomIds(ids);
+            if (ids.length == 0) {
+                return null;
+            }
+            // Lecture hors cache : les tirages aléatoires ne doivent pas évincer les installations les plus demandées
+            Installation installation = load(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+            if (installation != null) {
+                return installation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Retourne les identifiants utilisés pour le tirage aléatoire, en les rechargeant s'ils sont périmés.
+     * <p>
+     * Après un tirage infructueux, les identifiants utilisés sont rechargés, sauf s'ils l'ont déjà été entre-temps
+     * par un autre appel : des tirages concurrents ne provoquent qu'un rechargement.
+     *
+     * @param stale les identifiants d'un tirage infructueux, à recharger, ou <code>null</code>.
+     * @return les identifiants des installations.
+     */
+    private String[] randomIds(String[] stale) {
+        if (stale == randomIds || System.currentTimeMillis() - randomIdsLoadedAt > RANDOM_IDS_TTL) {
+            synchronized (this) {
+                if (stale == randomIds || System.currentTimeMillis() - randomIdsLoadedAt > RANDOM_IDS_TTL) {
+                    long start = System.nanoTime();
+                    List<String> ids = new ArrayList<>();
+                    try {
+                        this.installations.find().projection("{_id: 1}")
+                                .map(result -> (String) result.get("_id"))
+                                .forEach(ids::add);
+                    } finally {
+                        randomIdsLatency.recordSince(start);
+                    }
+                    randomIds = ids.toArray(new String[ids.size()]);
+                    randomIdsLoadedAt = System.currentTimeMillis();
+                }
+            }
+        }
+        return randomIds;
     }
 
     /**
@@ -74,7 +341,28 @@ public class InstallationService {
      * @return le nombre total d'installations
      */
     public long count() {
-        return installations.count();
+        long start = System.nanoTime();
+        try {
+            return installations.count();
+        } finally {
+            countLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Retourne le nombre total d'installations, éventuellement périmé de quelques secondes.
+     * <p>
+     * À utiliser lorsqu'une valeur approchée suffit (liens de pagination par exemple) afin de ne pas
+     * recompter la collection à chaque requête.
+     *
+     * @return le nombre total d'installations mis en cache.
+     */
+    public long estimatedCount() {
+        if (System.currentTimeMillis() - cachedCountLoadedAt > COUNT_TTL) {
+            cachedCount = count();
+            cachedCountLoadedAt = System.currentTimeMillis();
+        }
+        return cachedCount;
     }
 
     /**
@@ -83,12 +371,16 @@ public class InstallationService {
      * @return l'installation avec le plus d'équipements.
      */
     public Installation installationWithMaxEquipments() {
-
-        return this.installations.aggregate("{$project:{equipementscount:{$size:'$equipements'}, nom: 1, equipements: 1}}")
-                .and("{$sort:{'equipementscount': -1}}")
-                .and("{$limit: 1}")
-                .as(Installation.class)
-                .get(0);
+        long start = System.nanoTime();
+        try {
+            return this.installations.aggregate("{$project:{equipementscount:{$size:'$equipements'}, nom: 1, equipements: 1}}")
+                    .and("{$sort:{'equipementscount': -1}}")
+                    .and("{$limit: 1}")
+                    .as(Installation.class)
+                    .get(0);
+        } finally {
+            maxEquipmentsLatency.recordSince(start);
+        }
     }
 
     /**
@@ -97,49 +389,135 @@ public class InstallationService {
      * @return le nombre d'installations par activité.
      */
     public List<CountByActivity> countByActivity() {
-        return this.installations.aggregate("{$unwind: '$equipements'}")
-                .and("{$unwind: '$equipements.activites'}")
-                .and("{$group: {_id: '$equipements.activites', total: {$sum: 1}}}")
-                .and("{$project: {_id: 0, activite: '$_id', total: 1}}")
-                .as(CountByActivity.class);
+        long start = System.nanoTime();
+        try {
+            return this.installations.aggregate("{$unwind: '$equipements'}")
+                    .and("{$unwind: '$equipements.activites'}")
+                    .and("{$group: {_id: '$equipements.activites', total: {$sum: 1}}}")
+                    .and("{$project: {_id: 0, activite: '$_id', total: 1}}")
+                    .as(CountByActivity.class);
+        } finally {
+            countByActivityLatency.recordSince(start);
+        }
     }
 
     public double averageEquipmentsPerInstallation() {
-        return this.installations.aggregate("{$group: {_id: null, average : {$avg: {$size:'$equipements'}}}}")
-                .and("{$project: {_id: 0, average: 1}}")
-                .as(Average.class)
-                .get(0)
-                .getAverage();
+        long start = System.nanoTime();
+        try {
+            return this.installations.aggregate("{$group: {_id: null, average : {$avg: {$size:'$equipements'}}}}")
+                    .and("{$project: {_id: 0, average: 1}}")
+                    .as(Average.class)
+                    .get(0)
+                    .getAverage();
+        } finally {
+            averageEquipmentsLatency.recordSince(start);
+        }
     }
 
     /**
-     * Recherche des installations sportives.
+     * Recherche des installations sportives, par score de pertinence décroissant.
      *
      * @param searchQuery la requête de recherche.
+     * @param from        le rang du premier résultat.
+     * @param size        le nombre maximum de résultats.
+     * @param projection  les champs à lire.
      * @return les résultats correspondant à la requête.
      */
-    public List<Installation> search(String searchQuery) {
-        Iterable<Installation> iterable = installations.find("{$text: {$search: #}}", searchQuery).as(Installation.class);
-        List<Installation> installs = new ArrayList<>();
-        iterable.forEach(installs::add);
+    public <T> List<T> search(String searchQuery, int from, int size, Projection<T> projection) {
+        long start = System.nanoTime();
+        List<T> installs = new ArrayList<>();
+        Iterator<T> i = installations.find("{$text: {$search: #}}", searchQuery)
+                .projection(projection.getMongoProjectionWithTextScore(TEXT_SCORE_FIELD))
+                .sort("{" + TEXT_SCORE_FIELD + ": {$meta: 'textScore'}}")
+                .skip(from)
+                .limit(size)
+                .as(projection.getType());
+        try {
+            while (i.hasNext()) {
+                installs.add(i.next());
+            }
+        } finally {
+            searchLatency.recordSince(start);
+        }
         return installs;
     }
 
     /**
-     * Recherche des installations sportives par proximité géographique.
+     * Recherche des installations sportives par proximité géographique, page par page.
      *
-     * @param lat      latitude du point de départ.
-     * @param lng      longitude du point de départ.
-     * @param distance rayon de recherche.
-     * @return les installations dans la zone géographique demandée.
+     * @param lat        latitude du point de départ.
+     * @param lng        longitude du point de départ.
+     * @param distance   rayon de recherche.
+     * @param after      la position de la page dans les résultats.
+     * @param limit      le nombre maximum d'installations retournées.
+     * @param projection les champs à lire ; les coordonnées sont toujours lues.
+     * @return les installations dans la zone géographique demandée, de la plus proche à la plus éloignée.
      */
-    public List<Installation> geosearch(double lat, double lng, double distance) {
-        this.installations.ensureIndex("{'location': '2dsphere'}");
+    public List<Installation> geosearch(double lat, double lng, double distance, GeoCursor after, int limit, Projection<?> projection) {
+        long start = System.nanoTime();
         ArrayList<Installation> installs = new ArrayList<>();
-        Iterator<Installation> i = this.installations.find("{'location': {$near: {$geometry: {type: 'Point', coordinates : [" + lng + "," + lat + "]}, $maxDistance: " + distance + "}}}").as(Installation.class);
-        while (i.hasNext()) {
-            installs.add(i.next());
+        Find find = this.installations
+                .find("{location: {$near: {$geometry: {type: 'Point', coordinates: [#, #]}, $minDistance: #, $maxDistance: #}}, _id: {$nin: #}}",
+                        lng, lat, after.getMinDistance(), distance, after.getExcluded());
+        Iterator<Installation> i = project(find, projection.getMongoProjectionWithLocation())
+                .limit(limit)
+                .as(Installation.class);
+        try {
+            while (i.hasNext()) {
+                installs.add(i.next());
+            }
+        } finally {
+            geosearchLatency.recordSince(start);
         }
         return installs;
     }
+
+    /**
+     * Recherche les installations sportives les plus proches d'un point.
+     *
+     * @param lat   latitude du point de départ.
+     * @param lng   longitude du point de départ.
+     * @param count le nombre d'installations recherchées.
+     * @return les installations, de la plus proche à la plus éloignée.
+     */
+    public List<Installation> nearest(double lat, double lng, int count) {
+        long start = System.nanoTime();
+        ArrayList<Installation> installs = new ArrayList<>();
+        Iterator<Installation> i = this.installations
+                .find("{location: {$near: {$geometry: {type: 'Point', coordinates: [#, #]}}}}", lng, lat)
+                .limit(count)
+                .as(Installation.class);
+        try {
+            while (i.hasNext()) {
+                installs.add(i.next());
+            }
+        } finally {
+            nearestLatency.recordSince(start);
+        }
+        return installs;
+    }
+
+    /**
+     * Parcourt les coordonnées de toutes les installations, sans lire le reste des documents.
+     *
+     * @param consumer reçoit le numéro et les coordonnées GeoJSON [longitude, latitude] de chaque installation.
+     */
+    public void forEachLocation(BiConsumer<String, double[]> consumer) {
+        try (DBCursor cursor = this.installations.getDBCollection()
+                .find(new BasicDBObject(), new BasicDBObject("location.coordinates", 1))) {
+            cursor.forEach(result -> {
+                DBObject location = (DBObject) result.get("location");
+                List<?> coordinates = location == null ? null : (List<?>) location.get("coordinates");
+                if (coordinates != null && coordinates.size() >= 2) {
+                    consumer.accept((String) result.get("_id"), new double[]{
+                            ((Number) coordinates.get(0)).doubleValue(),
+                            ((Number) coordinates.get(1)).doubleValue()});
+                }
+            });
+        }
+    }
+
+    private static Find project(Find find, String projection) {
+        return projection == null ? find : find.projection(projection);
+    }
 }
@@ -0,0 +1,175 @@
+package nosql.workshop.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache local borné en nombre d'entrées (éviction LRU) et en durée de vie.
+ * <p>
+ * Les valeurs manquantes sont chargées à la demande ; une valeur <code>null</code> n'est pas mise en cache.
+ * Le chargement se fait hors du verrou : deux requêtes simultanées sur une même clé absente peuvent la charger
+ * toutes les deux. Un chargement commencé avant un {@link #invalidateAll()} n'est pas mis en cache : il pourrait
+ * retourner une valeur antérieure à l'invalidation, qui serait gardée pendant toute la durée de vie des entrées.
+ *
+ * @param <K> le type des clés.
+ * @param <V> le type des valeurs.
+ */
+public class LocalCache<K, V> {
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Incrémentée à chaque invalidation, sous le verrou de <code>entries</code>.
+     */
+    private volatile long generation;
+
+    /**
+     * @param maxSize le nombre maximum d'entrées.
+     * @param ttl     la durée de vie d'une entrée, en millisecondes.
+     */
+    public LocalCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                boolean evict = size() > LocalCache.this.maxSize;
+                if (evict) {
+                    evictions.increment();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Retourne la valeur associée à une clé, en la chargeant si elle est absente ou expirée.
+     *
+     * @param key    la clé.
+     * @param loader le chargement de la valeur.
+     * @return la valeur, ou <code>null</code> si le chargement retourne <code>null</code>.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long loadGeneration = generation;
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value, loadGeneration);
+        }
+        return value;
+    }
+
+    /**
+     * Retourne la valeur associée à une clé si elle est présente et non expirée.
+     *
+     * @param key la clé.
+     * @return la valeur, ou <code>null</code>.
+     */
+    public V getIfPresent(K key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Ajoute ou remplace une valeur.
+     *
+     * @param key   la clé.
+     * @param value la valeur.
+     */
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Ajoute ou remplace une valeur chargée hors du cache, sauf si le cache a été invalidé depuis le début du
+     * chargement.
+     *
+     * @param key        la clé.
+     * @param value      la valeur.
+     * @param generation la génération relevée par {@link #generation()} avant le chargement.
+     * @return <code>true</code> si la valeur a été mise en cache.
+     */
+    public boolean put(K key, V value, long generation) {
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            if (this.generation != generation) {
+                return false;
+            }
+            entries.put(key, entry);
+            return true;
+        }
+    }
+
+    /**
+     * Retourne la génération courante du cache, à relever avant un chargement fait hors du cache.
+     *
+     * @return la génération, incrémentée à chaque invalidation.
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Vide le cache. Les chargements en cours ne seront pas mis en cache.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,27 +1,82 @@
 package nosql.workshop.services;
 
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ServerAddress;
 import org.jongo.Jongo;
 
 import java.net.UnknownHostException;
 
 /**
- * Classe utilitaire permettant de fournir une connexion à la base MongoDB.
+ * Fournit la connexion à la base MongoDB.
+ * <p>
+ * Un seul {@link MongoClient} (et donc un seul pool de connexions) est créé pour toute l'application ; il doit être
+ * fermé par {@link #close()} à l'arrêt.
  */
+@Singleton
 public class MongoDB {
 
     public static final String DB_NAME = "nosql-workshop";
 
+    public static final String MONGO_HOST = "mongo.host";
+    public static final String MONGO_PORT = "mongo.port";
+    public static final String MONGO_POOL_SIZE = "mongo.pool.size";
+    public static final String MONGO_WAIT_QUEUE_MULTIPLIER = "mongo.pool.waitQueueMultiplier";
+    public static final String MONGO_MAX_WAIT_TIME = "mongo.pool.maxWaitTime";
+    public static final String MONGO_CONNECT_TIMEOUT = "mongo.connectTimeout";
+    public static final String MONGO_SOCKET_TIMEOUT = "mongo.socketTimeout";
+
+    private final MongoClient mongoClient;
+    private final Jongo jongo;
+
+    /**
+     * @param host                le serveur MongoDB.
+     * @param port                le port du serveur MongoDB.
+     * @param poolSize            le nombre maximum de connexions du pool.
+     * @param waitQueueMultiplier multiplié par <code>poolSize</code>, le nombre maximum de threads en attente
+     *                            d'une connexion.
+     * @param maxWaitTime         le temps d'attente maximum d'une connexion, en millisecondes.
+     * @param connectTimeout      le timeout d'ouverture d'une connexion, en millisecondes.
+     * @param socketTimeout       le timeout de lecture sur une connexion, en millisecondes (0 : pas de timeout).
+     * @throws UnknownHostException si le serveur n'est pas résolu.
+     */
+    @Inject
+    public MongoDB(@Named(MONGO_HOST) String host,
+                   @Named(MONGO_PORT) int port,
+                   @Named(MONGO_POOL_SIZE) int poolSize,
+                   @Named(MONGO_WAIT_QUEUE_MULTIPLIER) int waitQueueMultiplier,
+                   @Named(MONGO_MAX_WAIT_TIME) int maxWaitTime,
+                   @Named(MONGO_CONNECT_TIMEOUT) int connectTimeout,
+                   @Named(MONGO_SOCKET_TIMEOUT) int socketTimeout) throws UnknownHostException {
+        MongoClientOptions options = MongoClientOptions.builder()
+                .connectionsPerHost(poolSize)
+                .threadsAllowedToBlockForConnectionMultiplier(waitQueueMultiplier)
+                .maxWaitTime(maxWaitTime)
+                .connectTimeout(connectTimeout)
+                .socketTimeout(socketTimeout)
+                .build();
+        this.mongoClient = new MongoClient(new ServerAddress(host, port), options);
+        DB db = mongoClient.getDB(DB_NAME);
+        this.jongo = new Jongo(db);
+    }
+
     /**
-     * Retourne une instance Jongo permettant de se connecter à la base MongoDB.
+     * Retourne l'instance Jongo permettant de se connecter à la base MongoDB.
      *
      * @return l'instance Jongo.
-     * @throws UnknownHostException si la base n'est pas disponible.
      */
-    public Jongo getJongo() throws UnknownHostException {
-        MongoClient mongoClient = new MongoClient();
-        DB db = mongoClient.getDB(DB_NAME);
-        return new Jongo(db);
+    public Jongo getJongo() {
+        return jongo;
+    }
+
+    /**
+     * Ferme le pool de connexions.
+     */
+    public void close() {
+        mongoClient.close();
     }
 }
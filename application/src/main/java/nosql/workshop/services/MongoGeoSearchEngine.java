@@ -0,0 +1,29 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import nosql.workshop.model.Installation;
+
+import java.util.List;
+
+/**
+ * Recherche géographique par l'index <code>2dsphere</code> de MongoDB.
+ */
+public class MongoGeoSearchEngine implements GeoSearchEngine {
+
+    private final InstallationService installationService;
+
+    @Inject
+    public MongoGeoSearchEngine(InstallationService installationService) {
+        this.installationService = installationService;
+    }
+
+    @Override
+    public List<Installation> geosearch(double lat, double lng, double distance, GeoCursor after, int limit, Projection<?> projection) {
+        return installationService.geosearch(lat, lng, distance, after, limit, projection);
+    }
+
+    @Override
+    public List<Installation> nearest(double lat, double lng, int count) {
+        return installationService.nearest(lat, lng, count);
+    }
+}
@@ -0,0 +1,51 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import nosql.workshop.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Recherche full-text par l'index <code>text</code> de MongoDB, triée par score de pertinence.
+ */
+@Singleton
+public class MongoSearchEngine implements SearchEngine {
+
+    private final InstallationService installationService;
+
+    @Inject
+    public MongoSearchEngine(InstallationService installationService) {
+        this.installationService = installationService;
+    }
+
+    @Override
+    public <T> List<T> search(String searchQuery, int from, int size, Projection<T> projection) {
+        return installationService.search(searchQuery, from, size, projection);
+    }
+
+    /**
+     * Le driver MongoDB est bloquant : la recherche est faite sur le thread appelant.
+     */
+    @Override
+    public <T> CompletableFuture<List<T>> searchAsync(String searchQuery, int from, int size, Projection<T> projection) {
+        CompletableFuture<List<T>> future = new CompletableFuture<>();
+        try {
+            future.complete(search(searchQuery, from, size, projection));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public String getName() {
+        return MONGO_ENGINE;
+    }
+
+    @Override
+    public LatencyHistogram getLatency() {
+        return installationService.getSearchLatency();
+    }
+}
@@ -0,0 +1,186 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationSummary;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Champs des installations à lire, d'après le paramètre <code>fields</code> des requêtes.
+ * <p>
+ * MongoDB ne renvoie que les champs demandés (projection), et Elasticsearch ne renvoie que les parties
+ * correspondantes de la source (<i>source filtering</i>). Avec {@value #SUMMARY}, les documents sont lus directement
+ * sous la forme d'un {@link InstallationSummary}.
+ *
+ * @param <T> le type des documents lus.
+ */
+public final class Projection<T> {
+
+    /**
+     * Valeur du paramètre <code>fields</code> demandant la vue réduite : numéro, nom et coordonnées.
+     */
+    public static final String SUMMARY = "summary";
+
+    /**
+     * Champs de {@link Installation}, avec leur chemin dans les documents MongoDB et Elasticsearch. Ce chemin est
+     * aussi le nom de la propriété JSON sérialisée (le numéro porte l'annotation <code>@Id</code> de Jongo).
+     */
+    private static final Map<String, String> INSTALLATION_FIELDS = new LinkedHashMap<>();
+
+    static {
+        INSTALLATION_FIELDS.put("numero", "_id");
+        INSTALLATION_FIELDS.put("nom", "nom");
+        INSTALLATION_FIELDS.put("adresse", "adresse");
+        INSTALLATION_FIELDS.put("location", "location");
+        INSTALLATION_FIELDS.put("multiCommune", "multiCommune");
+        INSTALLATION_FIELDS.put("nbPlacesParking", "nbPlacesParking");
+        INSTALLATION_FIELDS.put("nbPlacesParkingHandicapes", "nbPlacesParkingHandicapes");
+        INSTALLATION_FIELDS.put("dateMiseAJourFiche", "dateMiseAJourFiche");
+        INSTALLATION_FIELDS.put("equipements", "equipements");
+    }
+
+    /**
+     * Tous les champs.
+     */
+    public static final Projection<Installation> ALL = new Projection<>(Installation.class, null, null,
+            Installation::getNumero, Function.identity());
+
+    /**
+     * Vue réduite, lue sous la forme d'un {@link InstallationSummary}.
+     */
+    public static final Projection<InstallationSummary> SUMMARY_VIEW = new Projection<>(InstallationSummary.class, null,
+            new String[]{"_id", "nom", "location.coordinates"}, InstallationSummary::getNumero, InstallationSummary::of);
+
+    private final Class<T> type;
+    private final Set<String> fields;
+    private final String[] paths;
+    private final Function<T, String> numero;
+    private final Function<Installation, T> fromInstallation;
+
+    private Projection(Class<T> type, Set<String> fields, String[] paths, Function<T, String> numero, Function<Installation, T> fromInstallation) {
+        this.type = type;
+        this.fields = fields;
+        this.paths = paths;
+        this.numero = numero;
+        this.fromInstallation = fromInstallation;
+    }
+
+    /**
+     * Lit le paramètre <code>fields</code> : {@value #SUMMARY}, ou une liste de champs de {@link Installation}
+     * séparés par des virgules.
+     *
+     * @param fields la valeur du paramètre, éventuellement <code>null</code>.
+     * @return la projection correspondante ; tous les champs si le paramètre est absent.
+     * @throws IllegalArgumentException si un champ est inconnu.
+     */
+    public static Projection<?> parse(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+        if (SUMMARY.equals(fields.trim())) {
+            return SUMMARY_VIEW;
+        }
+        Set<String> names = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!INSTALLATION_FIELDS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown field: " + name);
+            }
+            names.add(name);
+        }
+        String[] paths = names.stream().map(INSTALLATION_FIELDS::get).toArray(String[]::new);
+        // Le numéro est toujours écrit, comme MongoDB renvoie toujours "_id" : le frontend s'en sert
+        Set<String> properties = new LinkedHashSet<>();
+        properties.add("_id");
+        Collections.addAll(properties, paths);
+        return new Projection<>(Installation.class, Collections.unmodifiableSet(properties), paths,
+                Installation::getNumero, Function.identity());
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return les propriétés JSON de {@link Installation} à sérialiser (<code>_id</code> pour le numéro), ou
+     * <code>null</code> pour tous les champs du type lu.
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return la projection MongoDB, ou <code>null</code> pour lire les documents complets.
+     */
+    public String getMongoProjection() {
+        if (paths == null) {
+            return null;
+        }
+        return toMongoProjection(paths);
+    }
+
+    /**
+     * @return la projection MongoDB, complétée si besoin par les coordonnées (nécessaires aux curseurs des recherches
+     * géographiques), ou <code>null</code> pour lire les documents complets.
+     */
+    public String getMongoProjectionWithLocation() {
+        if (paths == null) {
+            return null;
+        }
+        Set<String> withLocation = new LinkedHashSet<>();
+        Collections.addAll(withLocation, paths);
+        if (!withLocation.contains("location")) {
+            withLocation.add("location.coordinates");
+        }
+        return toMongoProjection(withLocation.toArray(new String[withLocation.size()]));
+    }
+
+    /**
+     * @param scoreField le champ recevant le score de pertinence d'une recherche <code>$text</code>.
+     * @return la projection MongoDB complétée par le score ; les autres champs sont tous lus si la projection
+     * porte sur tous les champs.
+     */
+    public String getMongoProjectionWithTextScore(String scoreField) {
+        String score = "'" + scoreField + "': {$meta: 'textScore'}";
+        if (paths == null) {
+            return "{" + score + "}";
+        }
+        return "{" + toMongoProjectionEntries(paths) + ", " + score + "}";
+    }
+
+    /**
+     * @return les chemins à inclure de la source Elasticsearch, ou <code>null</code> pour la source complète.
+     */
+    public String[] getSourceIncludes() {
+        return paths;
+    }
+
+    /**
+     * @return le numéro d'un document lu.
+     */
+    public String numero(T document) {
+        return numero.apply(document);
+    }
+
+    /**
+     * Convertit une installation lue entièrement vers le type de cette projection.
+     */
+    public T fromInstallation(Installation installation) {
+        return fromInstallation.apply(installation);
+    }
+
+    private static String toMongoProjection(String[] paths) {
+        return "{" + toMongoProjectionEntries(paths) + "}";
+    }
+
+    private static String toMongoProjectionEntries(String[] paths) {
+        return Arrays.stream(paths).map(path -> "'" + path + "': 1").collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,52 @@
+package nosql.workshop.services;
+
+import nosql.workshop.metrics.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Moteur de recherche full-text des installations.
+ * <p>
+ * Le moteur utilisé est choisi dans <code>ApplicationModule</code> par la propriété {@value #SEARCH_ENGINE} :
+ * {@value #ELASTICSEARCH_ENGINE} (par défaut) ou {@value #MONGO_ENGINE} (index <code>text</code> de MongoDB).
+ * Chaque moteur expose les temps de réponse de son backend, pour comparer les deux sur une même charge.
+ */
+public interface SearchEngine {
+
+    String SEARCH_ENGINE = "search.engine";
+    String ELASTICSEARCH_ENGINE = "elasticsearch";
+    String MONGO_ENGINE = "mongo";
+
+    /**
+     * Recherche des installations, par pertinence décroissante.
+     *
+     * @param searchQuery la requête de recherche.
+     * @param from        le rang du premier résultat.
+     * @param size        le nombre maximum de résultats.
+     * @param projection  les champs à lire.
+     * @return les résultats.
+     */
+    <T> List<T> search(String searchQuery, int from, int size, Projection<T> projection);
+
+    /**
+     * Recherche des installations, par pertinence décroissante, sans bloquer l'appelant si le moteur le permet.
+     *
+     * @param searchQuery la requête de recherche.
+     * @param from        le rang du premier résultat.
+     * @param size        le nombre maximum de résultats.
+     * @param projection  les champs à lire.
+     * @return les résultats.
+     */
+    <T> CompletableFuture<List<T>> searchAsync(String searchQuery, int from, int size, Projection<T> projection);
+
+    /**
+     * @return le nom du moteur.
+     */
+    String getName();
+
+    /**
+     * @return les temps de réponse du moteur.
+     */
+    LatencyHistogram getLatency();
+}
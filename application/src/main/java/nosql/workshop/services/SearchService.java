@@ -2,19 +2,21 @@ package nosql.workshop.services;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
+import nosql.workshop.metrics.LatencyHistogram;
+import nosql.workshop.metrics.Metrics;
 import nosql.workshop.model.Installation;
+import nosql.workshop.model.InstallationSummary;
 import nosql.workshop.model.suggest.TownSuggest;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.action.suggest.SuggestResponse;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.settings.ImmutableSettings;
-import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.script.ScriptService;
@@ -26,6 +28,8 @@ import org.elasticsearch.search.suggest.completion.CompletionSuggestionBuilder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Chris on 12/02/15.
@@ -37,45 +41,150 @@ public class SearchService {
     private static final String TOWN_TYPE = "town";
 
 
-    public static final String ES_HOST = "es.host";
-    public static final String ES_TRANSPORT_PORT = "es.transport.port";
+    /**
+     * Type de recherche Elasticsearch (<code>query_then_fetch</code> par défaut). <code>dfs_query_then_fetch</code>
+     * donne des scores plus justes sur un petit index, au prix d'un aller-retour supplémentaire vers chaque shard.
+     */
+    public static final String SEARCH_TYPE = "search.type";
+
+    /**
+     * Active le calcul des explications de score, utile uniquement pour la mise au point des requêtes.
+     */
+    public static final String SEARCH_EXPLAIN = "search.explain";
+
+    /**
+     * Nombre maximum de résultats accessibles par pagination (<code>from + size</code>) : au-delà, chaque shard
+     * devrait trier un nombre de documents croissant avec la profondeur.
+     */
+    public static final int MAX_RESULT_WINDOW = 1000;
 
     final Client elasticSearchClient;
     final ObjectMapper objectMapper;
+    /**
+     * Lecteurs Jackson par type, construits une seule fois : la résolution des désérialiseurs n'est pas refaite à
+     * chaque document.
+     */
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ObjectReader townSuggestReader;
+    private final SearchType searchType;
+    private final boolean explain;
 
-    @Inject
-    public SearchService(@Named(ES_HOST) String host, @Named(ES_TRANSPORT_PORT) int transportPort) {
-        Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "elasticsearch").build();
+    private final LatencyHistogram searchLatency;
+    private final LatencyHistogram suggestLatency;
+    private final LatencyHistogram townLocationLatency;
 
-        elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress(host, transportPort));
+    /**
+     * @param elasticSearchClient le client Elasticsearch partagé, fermé à l'arrêt de l'application.
+     * @param searchType          le type de recherche.
+     * @param explain             le calcul des explications de score.
+     * @param metrics             le registre des mesures, recevant la durée de chaque appel à Elasticsearch.
+     */
+    @Inject
+    public SearchService(Client elasticSearchClient, @Named(SEARCH_TYPE) String searchType, @Named(SEARCH_EXPLAIN) boolean explain,
+                         Metrics metrics) {
+        this.searchType = SearchType.fromString(searchType);
+        this.explain = explain;
+        this.elasticSearchClient = elasticSearchClient;
+        this.searchLatency = metrics.timer("elasticsearch", "search");
+        this.suggestLatency = metrics.timer("elasticsearch", "suggestTownName");
+        this.townLocationLatency = metrics.timer("elasticsearch", "getTownLocation");
 
         objectMapper = new ObjectMapper();
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+        townSuggestReader = reader(TownSuggest.class);
+        reader(Installation.class);
+        reader(InstallationSummary.class);
+    }
+
+    /**
+     * Retourne les durées des recherches full-text sur Elasticsearch, réponse comprise.
+     *
+     * @return l'histogramme des durées.
+     */
+    public LatencyHistogram getSearchLatency() {
+        return searchLatency;
+    }
+
+    private ObjectReader reader(Class<?> type) {
+        return readers.computeIfAbsent(type, objectMapper::reader);
     }
 
     /**
      * Recherche les installations à l'aide d'une requête full-text
      *
      * @param searchQuery la requête
-     * @return la listes de installations
+     * @param from        le rang du premier résultat
+     * @param size        le nombre de résultats
+     * @param projection  les champs à lire dans la source des documents
+     * @return la listes de installations, par pertinence décroissante
      */
-    public List<Installation> search(String searchQuery) {
-        SearchResponse response = elasticSearchClient.prepareSearch(INSTALLATIONS_INDEX)
+    public <T> List<T> search(String searchQuery, int from, int size, Projection<T> projection) {
+        return Futures.await(searchAsync(searchQuery, from, size, projection));
+    }
+
+    /**
+     * Recherche les installations à l'aide d'une requête full-text, sans bloquer l'appelant pendant l'appel à
+     * Elasticsearch.
+     *
+     * @param searchQuery la requête
+     * @param from        le rang du premier résultat
+     * @param size        le nombre de résultats
+     * @param projection  les champs à lire dans la source des documents
+     * @return la listes de installations, par pertinence décroissante
+     */
+    public <T> CompletableFuture<List<T>> searchAsync(String searchQuery, int from, int size, Projection<T> projection) {
+        if (from < 0 || size < 0 || from + size > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("Result window is limited to " + MAX_RESULT_WINDOW + ": from=" + from + ", size=" + size);
+        }
+        SearchRequestBuilder request = elasticSearchClient.prepareSearch(INSTALLATIONS_INDEX)
                 .setTypes(INSTALLATION_TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                .setSearchType(searchType)
                 .setQuery(QueryBuilders
                         .boolQuery()
                         .must(QueryBuilders.queryString(searchQuery)
-                        )).setExplain(true)
-                .execute()
-                .actionGet();
-        List<Installation> installations = new ArrayList<>();
+                        ))
+                .setExplain(explain)
+                .setFrom(from)
+                .setSize(size);
+        if (projection.getSourceIncludes() != null) {
+            request.setFetchSource(projection.getSourceIncludes(), null);
+        }
+        return execute(request, searchLatency).thenApply(response -> {
+            List<T> installations = new ArrayList<>();
 
-        SearchHit[] hits = response.getHits().getHits();
-        for (SearchHit hit : hits)
-                installations.add(mapToInstallation(hit));
+            SearchHit[] hits = response.getHits().getHits();
+            for (SearchHit hit : hits)
+                    installations.add(mapToInstallation(hit, projection.getType()));
 
-        return installations;
+            return installations;
+        });
+    }
+
+    /**
+     * Exécute une requête avec l'API à listener du client : aucun thread n'attend la réponse.
+     * <p>
+     * Le listener est appelé sur le pool de threads du client, et non sur les threads réseau.
+     *
+     * @param latency l'histogramme recevant la durée de l'appel, mesurée jusqu'à la réception de la réponse.
+     */
+    private static CompletableFuture<SearchResponse> execute(SearchRequestBuilder request, LatencyHistogram latency) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        long start = System.nanoTime();
+        request.setListenerThreaded(true).execute(new ActionListener<SearchResponse>() {
+            @Override
+            public void onResponse(SearchResponse response) {
+                latency.recordSince(start);
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                latency.recordSince(start);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
     }
 
 
@@ -83,55 +192,74 @@ public class SearchService {
      * Transforme un résultat de recherche ES en objet installation.
      *
      * @param searchHit l'objet ES.
+     * @param type      le type de l'installation lue.
      * @return l'installation.
      */
-    private Installation mapToInstallation(SearchHit searchHit) {
+    private <T> T mapToInstallation(SearchHit searchHit, Class<T> type) {
         try {
-            return objectMapper.readValue(searchHit.getSourceAsString(), Installation.class);
+            return read(reader(type), searchHit.sourceRef());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Lit un document JSON directement depuis les octets reçus d'Elasticsearch, sans passer par une
+     * <code>String</code>.
+     */
+    private static <T> T read(ObjectReader reader, BytesReference bytes) throws IOException {
+        if (bytes.hasArray()) {
+            return reader.readValue(bytes.array(), bytes.arrayOffset(), bytes.length());
+        }
+        return reader.readValue(bytes.streamInput());
+    }
+
     public List<TownSuggest> suggestTownName(String townName) {
+        return Futures.await(suggestTownNameAsync(townName));
+    }
+
+    public CompletableFuture<List<TownSuggest>> suggestTownNameAsync(String townName) {
         CompletionSuggestionBuilder compBuilder = new CompletionSuggestionBuilder(TOWNS_INDEX);
         compBuilder.field("townNameSuggest");
         compBuilder.text(townName);
 
-        SearchResponse sr = elasticSearchClient.prepareSearch(TOWNS_INDEX).setTypes(TOWN_TYPE).addSuggestion(compBuilder).execute().actionGet();
+        return execute(elasticSearchClient.prepareSearch(TOWNS_INDEX).setTypes(TOWN_TYPE).addSuggestion(compBuilder), suggestLatency).thenApply(sr -> {
+            CompletionSuggestion compSuggestion = sr.getSuggest().getSuggestion("towns");
 
-        CompletionSuggestion compSuggestion = sr.getSuggest().getSuggestion("towns");
+            Iterator<CompletionSuggestion.Entry.Option> it = compSuggestion.iterator().next().getOptions().iterator();
+            List<TownSuggest> townSuggests = new ArrayList<>();
 
-        Iterator<CompletionSuggestion.Entry.Option> it = compSuggestion.iterator().next().getOptions().iterator();
-        List<TownSuggest> townSuggests = new ArrayList<>();
-
-        while (it.hasNext()) {
-            try {
-                townSuggests.add(objectMapper.readValue(it.next().getPayloadAsString(), TownSuggest.class));
-            } catch (IOException e) {
-                e.printStackTrace();
+            while (it.hasNext()) {
+                try {
+                    townSuggests.add(read(townSuggestReader, it.next().getPayload()));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
-        }
-
-        return townSuggests;
 
+            return townSuggests;
+        });
     }
 
     public Double[] getTownLocation(String townName) {
-        SearchResponse response = elasticSearchClient.prepareSearch(TOWNS_INDEX)
+        return Futures.await(getTownLocationAsync(townName));
+    }
+
+    public CompletableFuture<Double[]> getTownLocationAsync(String townName) {
+        SearchRequestBuilder request = elasticSearchClient.prepareSearch(TOWNS_INDEX)
                 .setTypes(TOWN_TYPE)
-                .setQuery(QueryBuilders.matchQuery("townName", townName))
-                .execute()
-                .actionGet();
+                .setQuery(QueryBuilders.matchQuery("townName", townName));
 
-        SearchHits searchHits = response.getHits();
-        TownSuggest ts;
-        try {
-            ts = objectMapper.readValue(searchHits.getHits()[0].getSourceAsString(), TownSuggest.class);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return execute(request, townLocationLatency).thenApply(response -> {
+            SearchHits searchHits = response.getHits();
+            TownSuggest ts;
+            try {
+                ts = read(townSuggestReader, searchHits.getHits()[0].sourceRef());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
 
-        return ts.getLocation();
+            return ts.getLocation();
+        });
     }
 }
@@ -0,0 +1,248 @@
+package nosql.workshop.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index spatial en mémoire des installations : grille régulière en degrés, dont les points sont rangés cellule par
+ * cellule dans des tableaux de <code>double</code>.
+ * <p>
+ * Une recherche ne parcourt que les cellules recouvrant la zone demandée, puis trie les distances. Les distances
+ * sont calculées sur une sphère de même rayon que celle de MongoDB pour les index <code>2dsphere</code>.
+ * L'index est immuable : il est reconstruit entièrement après un import.
+ */
+public final class SpatialIndex {
+
+    /**
+     * Rayon terrestre utilisé par MongoDB, en mètres.
+     */
+    public static final double EARTH_RADIUS = 6378100;
+
+    /**
+     * Taille par défaut d'une cellule, en degrés (environ 5 km de latitude).
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.05;
+
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+    private static final double MAX_DISTANCE = Math.PI * EARTH_RADIUS;
+
+    private final String[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    private final double cellSize;
+    private final double minLat;
+    private final double minLng;
+    private final int rows;
+    private final int cols;
+    /**
+     * Les points de la cellule <code>c</code> sont aux positions <code>cellStart[c]</code> (incluse) à
+     * <code>cellStart[c + 1]</code> (exclue).
+     */
+    private final int[] cellStart;
+
+    private SpatialIndex(String[] ids, double[] latitudes, double[] longitudes, double cellSize) {
+        this.cellSize = cellSize;
+        int size = ids.length;
+
+        double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+        double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            minLat = Math.min(minLat, latitudes[i]);
+            maxLat = Math.max(maxLat, latitudes[i]);
+            minLng = Math.min(minLng, longitudes[i]);
+            maxLng = Math.max(maxLng, longitudes[i]);
+        }
+        this.minLat = size == 0 ? 0 : minLat;
+        this.minLng = size == 0 ? 0 : minLng;
+        this.rows = size == 0 ? 1 : (int) ((maxLat - minLat) / cellSize) + 1;
+        this.cols = size == 0 ? 1 : (int) ((maxLng - minLng) / cellSize) + 1;
+
+        // Tri par cellule (tri par dénombrement)
+        int[] cells = new int[size];
+        this.cellStart = new int[rows * cols + 1];
+        for (int i = 0; i < size; i++) {
+            cells[i] = row(latitudes[i]) * cols + col(longitudes[i]);
+            cellStart[cells[i] + 1]++;
+        }
+        for (int c = 0; c < rows * cols; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, rows * cols);
+        this.ids = new String[size];
+        this.latitudes = new double[size];
+        this.longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            int position = next[cells[i]]++;
+            this.ids[position] = ids[i];
+            this.latitudes[position] = latitudes[i];
+            this.longitudes[position] = longitudes[i];
+        }
+    }
+
+    /**
+     * Recherche les points dans un rayon donné.
+     *
+     * @param lat      latitude du centre.
+     * @param lng      longitude du centre.
+     * @param distance rayon, en mètres.
+     * @return les points trouvés, triés par distance croissante.
+     */
+    public Result withinDistance(double lat, double lng, double distance) {
+        return search(lat, lng, distance, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Recherche les points les plus proches. Le rayon de recherche double jusqu'à contenir assez de points.
+     *
+     * @param lat   latitude du centre.
+     * @param lng   longitude du centre.
+     * @param count le nombre de points recherchés.
+     * @return au plus <code>count</code> points, triés par distance croissante.
+     */
+    public Result nearest(double lat, double lng, int count) {
+        double radius = cellSize * METERS_PER_DEGREE;
+        while (true) {
+            Result result = search(lat, lng, radius, count);
+            if (result.size() >= Math.min(count, ids.length) || radius >= MAX_DISTANCE) {
+                return result;
+            }
+            radius *= 2;
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private Result search(double lat, double lng, double distance, int limit) {
+        double deltaLat = distance / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(lat));
+        double deltaLng = cos < 1e-6 ? 360 : Math.min(360, deltaLat / cos);
+
+        int firstRow = Math.max(0, row(lat - deltaLat));
+        int lastRow = Math.min(rows - 1, row(lat + deltaLat));
+        int firstCol = Math.max(0, col(lng - deltaLng));
+        int lastCol = Math.min(cols - 1, col(lng + deltaLng));
+
+        // Distance (float, dont l'ordre des bits suit celui des valeurs positives) et position dans un même long
+        long[] found = new long[16];
+        int count = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    double d = distance(lat, lng, latitudes[i], longitudes[i]);
+                    if (d <= distance) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = ((long) Float.floatToIntBits((float) d) << 32) | i;
+                    }
+                }
+            }
+        }
+        Arrays.sort(found, 0, count);
+
+        int size = Math.min(count, limit);
+        String[] resultIds = new String[size];
+        double[] resultDistances = new double[size];
+        for (int i = 0; i < size; i++) {
+            int position = (int) found[i];
+            resultIds[i] = ids[position];
+            resultDistances[i] = Float.intBitsToFloat((int) (found[i] >>> 32));
+        }
+        return new Result(resultIds, resultDistances);
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((lat - minLat) / cellSize);
+    }
+
+    private int col(double lng) {
+        return (int) Math.floor((lng - minLng) / cellSize);
+    }
+
+    /**
+     * Distance orthodromique (formule de haversine).
+     *
+     * @return la distance entre les deux points, en mètres.
+     */
+    public static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double sinLat = Math.sin(Math.toRadians(lat2 - lat1) / 2);
+        double sinLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+        double a = sinLat * sinLat + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Résultat d'une recherche : numéros et distances, par distance croissante.
+     */
+    public static final class Result {
+        private final String[] ids;
+        private final double[] distances;
+
+        private Result(String[] ids, double[] distances) {
+            this.ids = ids;
+            this.distances = distances;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public String id(int i) {
+            return ids[i];
+        }
+
+        public double distance(int i) {
+            return distances[i];
+        }
+    }
+
+    /**
+     * Construit un index à partir des coordonnées des installations.
+     */
+    public static final class Builder {
+        private final double cellSize;
+        private final List<String> ids = new ArrayList<>();
+        private double[] latitudes = new double[256];
+        private double[] longitudes = new double[256];
+
+        public Builder() {
+            this(DEFAULT_CELL_SIZE);
+        }
+
+        public Builder(double cellSize) {
+            this.cellSize = cellSize;
+        }
+
+        /**
+         * Ajoute un point. Les installations sans coordonnées (importées en [0, 0]) sont ignorées.
+         *
+         * @param id          le numéro de l'installation.
+         * @param coordinates les coordonnées GeoJSON : [longitude, latitude].
+         * @return le builder.
+         */
+        public Builder add(String id, double[] coordinates) {
+            if (coordinates == null || coordinates.length < 2 || (coordinates[0] == 0 && coordinates[1] == 0)) {
+                return this;
+            }
+            int position = ids.size();
+            if (position == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, position * 2);
+                longitudes = Arrays.copyOf(longitudes, position * 2);
+            }
+            ids.add(id);
+            longitudes[position] = coordinates[0];
+            latitudes[position] = coordinates[1];
+            return this;
+        }
+
+        public SpatialIndex build() {
+            int size = ids.size();
+            return new SpatialIndex(ids.toArray(new String[size]), Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size), cellSize);
+        }
+    }
+}
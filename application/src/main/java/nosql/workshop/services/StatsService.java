@@ -0,0 +1,184 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import nosql.workshop.metrics.Metrics;
+import nosql.workshop.model.stats.InstallationsStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Service fournissant les statistiques sur les installations.
+ * <p>
+ * Les statistiques sont précalculées dans un instantané servi depuis la mémoire. L'instantané est recalculé en
+ * tâche de fond à intervalle régulier et après chaque import ; s'il dépasse malgré tout l'âge maximum autorisé
+ * (base indisponible par exemple), il est recalculé lors de la requête.
+ * <p>
+ * Les quatre requêtes d'un calcul sont exécutées en parallèle : la durée du calcul, exposée dans les métriques
+ * (<code>stats_refresh_duration_seconds</code>), est celle de la plus lente. La durée de chaque requête est mesurée
+ * par {@link InstallationService} (<code>backend="mongo"</code>).
+ */
+@Singleton
+public class StatsService {
+
+    public static final String STATS_MAX_AGE = "stats.maxAge";
+
+    /**
+     * Nombre de requêtes composant les statistiques, et donc de threads dédiés à leur calcul.
+     */
+    private static final int QUERY_COUNT = 4;
+
+    /**
+     * Intervalle minimum entre deux recalculs en tâche de fond, en millisecondes.
+     */
+    private static final long MIN_REFRESH_INTERVAL = 1000;
+
+    private final InstallationService installationService;
+    private final long maxAge;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stats-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService queryExecutor = Executors.newFixedThreadPool(QUERY_COUNT, runnable -> {
+        Thread thread = new Thread(runnable, "stats-query");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param installationService le service des installations.
+     * @param importMonitor       la surveillance des imports, déclenchant un recalcul.
+     * @param metrics             le registre des mesures, recevant l'âge et la durée de calcul de l'instantané.
+     * @param maxAge              l'âge maximum de l'instantané, en secondes ; <code>0</code> pour calculer les
+     *                            statistiques à chaque requête.
+     */
+    @Inject
+    public StatsService(InstallationService installationService, ImportMonitor importMonitor, Metrics metrics,
+                        @Named(STATS_MAX_AGE) int maxAge) {
+        this.installationService = installationService;
+        this.maxAge = TimeUnit.SECONDS.toMillis(maxAge);
+
+        // Avec un âge maximum nul, les statistiques sont calculées à chaque requête : pas de recalcul en tâche de fond
+        if (this.maxAge > 0) {
+            long refreshInterval = Math.max(MIN_REFRESH_INTERVAL, this.maxAge / 2);
+            scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshInterval, TimeUnit.MILLISECONDS);
+            importMonitor.addListener(() -> scheduler.execute(this::refreshQuietly));
+        }
+        metrics.gauge("stats_snapshot_age_seconds", "Âge de l'instantané des statistiques (-1 s'il n'est pas encore calculé).",
+                () -> {
+                    long age = snapshotAge();
+                    return age < 0 ? -1 : age / 1000.0;
+                });
+        metrics.gauge("stats_refresh_duration_seconds", "Durée du dernier calcul des statistiques (-1 s'il n'est pas encore calculé).",
+                () -> {
+                    Snapshot current = snapshot;
+                    return current == null ? -1 : current.duration / 1000.0;
+                });
+    }
+
+    /**
+     * Retourne les statistiques sur les installations.
+     *
+     * @return les statistiques, datant au plus de l'âge maximum configuré.
+     */
+    public InstallationsStats stats() {
+        Snapshot current = snapshot;
+        if (current == null || age(current) > maxAge) {
+            current = refresh(false);
+        }
+        return current.stats;
+    }
+
+    /**
+     * Retourne l'âge de l'instantané courant.
+     *
+     * @return l'âge de l'instantané en millisecondes, ou <code>-1</code> s'il n'a pas encore été calculé.
+     */
+    public long snapshotAge() {
+        Snapshot current = snapshot;
+        return current == null ? -1 : age(current);
+    }
+
+    /**
+     * Arrête le recalcul en tâche de fond.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        queryExecutor.shutdownNow();
+    }
+
+    /**
+     * Recalcule l'instantané. Les appels concurrents sont sérialisés : sauf si <code>force</code> est demandé, un appel
+     * arrivant pendant un calcul réutilise son résultat.
+     *
+     * @param force recalcule l'instantané même s'il est encore valide.
+     */
+    private synchronized Snapshot refresh(boolean force) {
+        Snapshot current = snapshot;
+        if (!force && current != null && age(current) <= maxAge) {
+            return current;
+        }
+        long computedAt = System.currentTimeMillis();
+        InstallationsStats stats = new InstallationsStats();
+
+        try {
+            CompletableFuture.allOf(
+                    query(installationService::count)
+                            .thenAccept(stats::setTotalCount),
+                    query(installationService::countByActivity)
+                            .thenAccept(stats::setCountByActivity),
+                    query(installationService::installationWithMaxEquipments)
+                            .thenAccept(stats::setInstallationWithMaxEquipments),
+                    query(installationService::averageEquipmentsPerInstallation)
+                            .thenAccept(stats::setAverageEquipmentsPerInstallation)
+            ).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+
+        snapshot = new Snapshot(stats, computedAt, System.currentTimeMillis() - computedAt);
+        return snapshot;
+    }
+
+    /**
+     * Lance une requête sur le pool dédié.
+     */
+    private <T> CompletableFuture<T> query(Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, queryExecutor);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh(true);
+        } catch (RuntimeException e) {
+            // L'instantané précédent reste servi jusqu'à l'âge maximum
+            e.printStackTrace();
+        }
+    }
+
+    private static long age(Snapshot snapshot) {
+        return System.currentTimeMillis() - snapshot.computedAt;
+    }
+
+    private static final class Snapshot {
+        private final InstallationsStats stats;
+        private final long computedAt;
+        private final long duration;
+
+        private Snapshot(InstallationsStats stats, long computedAt, long duration) {
+            this.stats = stats;
+            this.computedAt = computedAt;
+            this.duration = duration;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package nosql.workshop.services;
+
+import com.google.inject.Singleton;
+import nosql.workshop.model.suggest.TownSuggest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Référentiel des villes chargé en mémoire, alternative à Elasticsearch pour les suggestions et la localisation.
+ * <p>
+ * Les noms sont indexés dans un arbre préfixe insensible à la casse, aux accents et à la ponctuation ; chaque noeud
+ * conserve directement les {@value #MAX_SUGGESTIONS} premières villes (par ordre alphabétique) commençant par son
+ * préfixe. Les coordonnées sont stockées dans des tableaux de <code>double</code>.
+ */
+@Singleton
+public class TownGazetteer {
+
+    /**
+     * Fichier des villes, copie de celui importé par le batch <code>ImportTowns</code>.
+     */
+    public static final String TOWNS_RESOURCE = "/csv/towns_paysdeloire.csv";
+
+    /**
+     * Nombre de suggestions retournées (valeur par défaut du suggester Elasticsearch).
+     */
+    public static final int MAX_SUGGESTIONS = 5;
+
+    private final String[] names;
+    private final double[] longitudes;
+    private final double[] latitudes;
+    private final Node root = new Node();
+
+    public TownGazetteer() {
+        List<String[]> towns = readTowns();
+        towns.sort(Comparator.comparing(town -> normalize(town[0])));
+
+        int size = towns.size();
+        this.names = new String[size];
+        this.longitudes = new double[size];
+        this.latitudes = new double[size];
+        for (int id = 0; id < size; id++) {
+            String[] town = towns.get(id);
+            names[id] = town[0];
+            longitudes[id] = Double.parseDouble(town[1]);
+            latitudes[id] = Double.parseDouble(town[2]);
+            insert(normalize(names[id]), id);
+        }
+    }
+
+    /**
+     * Suggère des villes à partir du début de leur nom.
+     *
+     * @param text le début du nom de la ville.
+     * @return au plus {@value #MAX_SUGGESTIONS} villes, par ordre alphabétique.
+     */
+    public List<TownSuggest> suggest(String text) {
+        Node node = find(normalize(text));
+        if (node == null) {
+            return new ArrayList<>();
+        }
+        List<TownSuggest> suggestions = new ArrayList<>(node.topCount);
+        for (int i = 0; i < node.topCount; i++) {
+            suggestions.add(toTownSuggest(node.top[i]));
+        }
+        return suggestions;
+    }
+
+    /**
+     * Retourne la position d'une ville.
+     *
+     * @param townName le nom de la ville.
+     * @return les coordonnées [longitude, latitude], ou <code>null</code> si la ville est inconnue.
+     */
+    public Double[] getLocation(String townName) {
+        Node node = find(normalize(townName));
+        if (node == null || node.town < 0) {
+            return null;
+        }
+        return new Double[]{longitudes[node.town], latitudes[node.town]};
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    private TownSuggest toTownSuggest(int id) {
+        return new TownSuggest(names[id], Arrays.asList(longitudes[id], latitudes[id]));
+    }
+
+    private void insert(String key, int id) {
+        Node node = root;
+        node.addTop(id);
+        for (int i = 0; i < key.length(); i++) {
+            node = node.child(key.charAt(i), true);
+            node.addTop(id);
+        }
+        // Homonymes : la première ville (ordre du fichier trié) est retenue, comme le premier résultat d'Elasticsearch
+        if (node.town < 0) {
+            node.town = id;
+        }
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i), false);
+        }
+        return node;
+    }
+
+    /**
+     * Passe un nom en majuscules sans accents, la ponctuation étant remplacée par des espaces.
+     */
+    static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            normalized.append(Character.isLetterOrDigit(c) ? Character.toUpperCase(c) : ' ');
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Lit le fichier des villes.
+     *
+     * @return pour chaque ville : nom, longitude, latitude.
+     */
+    private static List<String[]> readTowns() {
+        List<String[]> towns = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TownGazetteer.class.getResourceAsStream(TOWNS_RESOURCE), StandardCharsets.UTF_8))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    towns.add(parseTown(line));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return towns;
+    }
+
+    /**
+     * Les coordonnées du fichier utilisent la virgule comme séparateur décimal, comme les colonnes :
+     * <code>257536,"BRILLOUET","BRILLOUET","85210","FRANCE","85",-1,01899,46,52421</code>.
+     */
+    private static String[] parseTown(String line) {
+        String[] columns = line.split(",");
+        String name = columns[1].replace("\"", "");
+        String[] coordinates = Arrays.copyOfRange(columns, 6, columns.length);
+
+        if (coordinates.length == 4) {
+            return new String[]{name, coordinates[0] + "." + coordinates[1], coordinates[2] + "." + coordinates[3]};
+        }
+        // Une des deux coordonnées est entière : dans la région, seule la latitude est supérieure à 40
+        int second = Integer.parseInt(coordinates[1]);
+        if (second >= 40) {
+            return new String[]{name, coordinates[0], coordinates[1] + "." + coordinates[2]};
+        }
+        return new String[]{name, coordinates[0] + "." + coordinates[1], coordinates[2]};
+    }
+
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private final int[] top = new int[MAX_SUGGESTIONS];
+        private int topCount;
+        private int town = -1;
+
+        private void addTop(int id) {
+            if (topCount < MAX_SUGGESTIONS) {
+                top[topCount++] = id;
+            }
+        }
+
+        private Node child(char key, boolean create) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0) {
+                return children[index];
+            }
+            if (!create) {
+                return null;
+            }
+            int insertion = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = key;
+            newChildren[insertion] = new Node();
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertion];
+        }
+    }
+}
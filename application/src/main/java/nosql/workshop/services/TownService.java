@@ -0,0 +1,158 @@
+package nosql.workshop.services;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import nosql.workshop.metrics.Metrics;
+import nosql.workshop.model.suggest.TownSuggest;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service d'accès aux villes.
+ * <p>
+ * Par défaut, les villes sont recherchées dans Elasticsearch. Les suggestions sont alors mises en cache par préfixe,
+ * y compris lorsqu'aucune ville ne correspond, et les requêtes simultanées sur un même préfixe absent du cache
+ * partagent un seul appel.
+ * <p>
+ * Avec le backend {@value #EMBEDDED_BACKEND}, les villes sont servies par le {@link TownGazetteer} chargé en mémoire
+ * au démarrage ; Elasticsearch n'est plus interrogé que pour localiser une ville absente du référentiel.
+ */
+@Singleton
+public class TownService {
+
+    public static final String SUGGEST_CACHE_SIZE = "towns.suggest.cache.size";
+    public static final String SUGGEST_CACHE_TTL = "towns.suggest.cache.ttl";
+    public static final String TOWNS_BACKEND = "towns.backend";
+
+    public static final String ELASTICSEARCH_BACKEND = "elasticsearch";
+    public static final String EMBEDDED_BACKEND = "embedded";
+
+    private final SearchService searchService;
+    private final TownGazetteer gazetteer;
+    private final LocalCache<String, List<TownSuggest>> suggestCache;
+    private final ConcurrentMap<String, CompletableFuture<List<TownSuggest>>> pendingSuggests = new ConcurrentHashMap<>();
+
+    /**
+     * @param searchService le service de recherche Elasticsearch.
+     * @param gazetteer     le référentiel en mémoire, chargé uniquement avec le backend {@value #EMBEDDED_BACKEND}.
+     * @param backend       le backend : {@value #ELASTICSEARCH_BACKEND} ou {@value #EMBEDDED_BACKEND}.
+     * @param cacheSize     le nombre maximum de préfixes gardés en cache.
+     * @param cacheTtl      la durée de vie d'une suggestion en cache, en secondes.
+     * @param metrics       le registre des mesures, recevant les compteurs du cache.
+     */
+    @Inject
+    public TownService(SearchService searchService,
+                       Provider<TownGazetteer> gazetteer,
+                       @Named(TOWNS_BACKEND) String backend,
+                       @Named(SUGGEST_CACHE_SIZE) int cacheSize,
+                       @Named(SUGGEST_CACHE_TTL) int cacheTtl,
+                       Metrics metrics) {
+        this.searchService = searchService;
+        this.gazetteer = EMBEDDED_BACKEND.equals(backend) ? gazetteer.get() : null;
+        this.suggestCache = new LocalCache<>(cacheSize, TimeUnit.SECONDS.toMillis(cacheTtl));
+
+        metrics.counter("towns_suggest_cache_hits_total", "Suggestions de villes servies par le cache.", suggestCache::hits);
+        metrics.counter("towns_suggest_cache_misses_total", "Suggestions de villes absentes du cache.", suggestCache::misses);
+        metrics.counter("towns_suggest_cache_evictions_total", "Suggestions de villes évincées du cache.", suggestCache::evictions);
+        metrics.gauge("towns_suggest_cache_size", "Nombre de préfixes en cache.", suggestCache::size);
+    }
+
+    /**
+     * Suggère des villes à partir du début de leur nom.
+     *
+     * @param text le début du nom de la ville.
+     * @return les villes suggérées (liste non modifiable, partagée entre les requêtes).
+     */
+    public List<TownSuggest> suggest(String text) {
+        return Futures.await(suggestAsync(text));
+    }
+
+    /**
+     * Suggère des villes à partir du début de leur nom, sans bloquer l'appelant pendant l'appel à Elasticsearch.
+     *
+     * @param text le début du nom de la ville.
+     * @return les villes suggérées (liste non modifiable, partagée entre les requêtes).
+     */
+    public CompletableFuture<List<TownSuggest>> suggestAsync(String text) {
+        if (gazetteer != null) {
+            return CompletableFuture.completedFuture(gazetteer.suggest(text));
+        }
+
+        String prefix = text.toLowerCase(Locale.ROOT);
+        List<TownSuggest> cached = suggestCache.getIfPresent(prefix);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<TownSuggest>> pending = new CompletableFuture<>();
+        CompletableFuture<List<TownSuggest>> inProgress = pendingSuggests.putIfAbsent(prefix, pending);
+        if (inProgress != null) {
+            return inProgress;
+        }
+
+        long generation = suggestCache.generation();
+        CompletableFuture<List<TownSuggest>> call;
+        try {
+            call = searchService.suggestTownNameAsync(text);
+        } catch (RuntimeException e) {
+            call = new CompletableFuture<>();
+            call.completeExceptionally(e);
+        }
+        call.whenComplete((suggestions, error) -> {
+            if (error == null) {
+                List<TownSuggest> unmodifiable = Collections.unmodifiableList(suggestions);
+                // Mise en cache avant de libérer le préfixe : une nouvelle requête trouve l'un ou l'autre
+                suggestCache.put(prefix, unmodifiable, generation);
+                pendingSuggests.remove(prefix, pending);
+                pending.complete(unmodifiable);
+            } else {
+                pendingSuggests.remove(prefix, pending);
+                pending.completeExceptionally(error);
+            }
+        });
+        return pending;
+    }
+
+    /**
+     * Retourne la position d'une ville.
+     *
+     * @param townName le nom de la ville.
+     * @return les coordonnées [longitude, latitude] de la ville.
+     */
+    public Double[] getLocation(String townName) {
+        return Futures.await(getLocationAsync(townName));
+    }
+
+    /**
+     * Retourne la position d'une ville, sans bloquer l'appelant pendant l'appel à Elasticsearch.
+     *
+     * @param townName le nom de la ville.
+     * @return les coordonnées [longitude, latitude] de la ville.
+     */
+    public CompletableFuture<Double[]> getLocationAsync(String townName) {
+        if (gazetteer != null) {
+            Double[] location = gazetteer.getLocation(townName);
+            if (location != null) {
+                return CompletableFuture.completedFuture(location);
+            }
+        }
+        return searchService.getTownLocationAsync(townName);
+    }
+
+    /**
+     * Retourne le cache des suggestions, pour consulter ses compteurs.
+     *
+     * @return le cache des suggestions.
+     */
+    public LocalCache<String, List<TownSuggest>> getSuggestCache() {
+        return suggestCache;
+    }
+}
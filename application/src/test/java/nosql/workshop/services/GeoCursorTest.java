@@ -0,0 +1,84 @@
+package nosql.workshop.services;
+
+import nosql.workshop.model.Installation;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class GeoCursorTest {
+
+    private static final double LAT = 47.218371;
+    private static final double LNG = -1.553621;
+
+    /**
+     * 280 installations partagent les coordonnées (-1.554609, 47.216501) dans le fichier des installations.
+     */
+    @Test
+    public void paginatesTieGroupLargerThanLimit() {
+        List<Installation> installations = new ArrayList<>();
+        for (int i = 0; i < 280; i++) {
+            installations.add(installation("A" + i, -1.554609, 47.216501));
+        }
+        for (int i = 0; i < 200; i++) {
+            installations.add(installation("B" + i, -1.55, 47.22));
+        }
+        for (int i = 0; i < 30; i++) {
+            installations.add(installation("C" + i, -1.55 + i * 0.001, 47.23));
+        }
+
+        for (int limit : new int[]{1, 7, 50, 199, 279}) {
+            List<String> returned = paginate(installations, limit, new Random(limit));
+            assertEquals("limit " + limit, installations.size(), returned.size());
+            assertEquals("limit " + limit, installations.size(), new HashSet<>(returned).size());
+        }
+    }
+
+    /**
+     * Simule le moteur de recherche : résultats triés par distance, dans un ordre quelconque à distance égale.
+     */
+    private static List<String> paginate(List<Installation> installations, int limit, Random random) {
+        List<String> returned = new ArrayList<>();
+        GeoCursor cursor = GeoCursor.first();
+        for (int pages = 0; pages <= installations.size(); pages++) {
+            List<Installation> shuffled = new ArrayList<>(installations);
+            Collections.shuffle(shuffled, random);
+            shuffled.sort(Comparator.comparingDouble(GeoCursorTest::distance));
+            GeoCursor after = cursor;
+            List<Installation> page = shuffled.stream()
+                    .filter(installation -> after.accepts(installation.getNumero(), distance(installation)))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+            page.forEach(installation -> returned.add(installation.getNumero()));
+            if (page.size() < limit) {
+                return returned;
+            }
+            // Aller-retour par la forme textuelle, comme dans le lien "next"
+            cursor = GeoCursor.decode(GeoCursor.after(LAT, LNG, cursor, page).encode());
+        }
+        fail("La pagination ne se termine pas");
+        return returned;
+    }
+
+    private static double distance(Installation installation) {
+        double[] coordinates = installation.getLocation().getCoordinates();
+        return SpatialIndex.distance(LAT, LNG, coordinates[1], coordinates[0]);
+    }
+
+    private static Installation installation(String numero, double lng, double lat) {
+        Installation installation = new Installation();
+        installation.setNumero(numero);
+        Installation.Location location = installation.new Location();
+        location.setCoordinates(new double[]{lng, lat});
+        installation.setLocation(location);
+        return installation;
+    }
+}
@@ -0,0 +1,84 @@
+package nosql.workshop.batch.csv;
+
+/**
+ * Découpe une ligne CSV en colonnes en tenant compte des guillemets.
+ * <p>
+ * Les colonnes entourées de guillemets peuvent contenir le séparateur, et <code>""</code> y représente un guillemet.
+ * La ligne est parcourue deux fois (comptage des colonnes puis extraction) afin d'allouer directement le tableau
+ * résultat ; seules les colonnes contenant des guillemets échappés nécessitent une copie supplémentaire.
+ */
+public final class CsvTokenizer {
+
+    private static final char QUOTE = '"';
+
+    private CsvTokenizer() {
+    }
+
+    /**
+     * Découpe une ligne dont les colonnes sont séparées par des virgules.
+     *
+     * @param line la ligne.
+     * @return les colonnes, sans leurs guillemets.
+     */
+    public static String[] split(String line) {
+        return split(line, ',');
+    }
+
+    /**
+     * Découpe une ligne CSV.
+     *
+     * @param line      la ligne.
+     * @param separator le séparateur de colonnes.
+     * @return les colonnes, sans leurs guillemets.
+     */
+    public static String[] split(String line, char separator) {
+        String[] columns = new String[countColumns(line, separator)];
+        int length = line.length();
+        int column = 0;
+        int position = 0;
+
+        while (column < columns.length) {
+            if (position < length && line.charAt(position) == QUOTE) {
+                // Colonne entre guillemets : recherche du guillemet fermant
+                int start = position + 1;
+                int end = start;
+                boolean escaped = false;
+                while (end < length) {
+                    if (line.charAt(end) == QUOTE) {
+                        if (end + 1 < length && line.charAt(end + 1) == QUOTE) {
+                            escaped = true;
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                String value = line.substring(start, Math.min(end, length));
+                columns[column++] = escaped ? value.replace("\"\"", "\"") : value;
+                int next = line.indexOf(separator, end);
+                position = next < 0 ? length : next + 1;
+            } else {
+                int next = line.indexOf(separator, position);
+                int end = next < 0 ? length : next;
+                columns[column++] = line.substring(Math.min(position, length), end);
+                position = end + 1;
+            }
+        }
+        return columns;
+    }
+
+    private static int countColumns(String line, char separator) {
+        int count = 1;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == QUOTE) {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,114 @@
+package nosql.workshop.batch.csv;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Lit un fichier CSV en parallélisant l'analyse des lignes.
+ * <p>
+ * Les lignes sont lues séquentiellement puis regroupées en blocs analysés sur un {@link ForkJoinPool}. Le nombre de
+ * blocs en cours est borné, la mémoire utilisée ne dépend donc pas de la taille du fichier.
+ * <ul>
+ * <li>en mode ordonné, les résultats sont transmis dans l'ordre du fichier, depuis le thread appelant : le
+ * consommateur n'a pas besoin d'être thread-safe ;</li>
+ * <li>en mode non ordonné, chaque bloc est transmis au consommateur depuis le thread qui l'a analysé : le
+ * consommateur doit être thread-safe.</li>
+ * </ul>
+ * La première ligne (en-tête) et les lignes vides sont ignorées, de même que les lignes pour lesquelles
+ * l'analyse retourne <code>null</code>.
+ */
+public class ParallelCsvReader {
+
+    /**
+     * Propriété système permettant de configurer le nombre de lignes par bloc.
+     */
+    public static final String CHUNK_SIZE = "csv.chunkSize";
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    public ParallelCsvReader() {
+        this(ForkJoinPool.commonPool(), Integer.getInteger(CHUNK_SIZE, DEFAULT_CHUNK_SIZE));
+    }
+
+    public ParallelCsvReader(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = pool.getParallelism() * 2;
+    }
+
+    /**
+     * Lit toutes les lignes du fichier.
+     *
+     * @param reader  le fichier.
+     * @param parser  l'analyse d'une ligne, exécutée en parallèle.
+     * @param sink    le consommateur des lignes analysées.
+     * @param ordered <code>true</code> pour recevoir les lignes dans l'ordre du fichier, depuis le thread appelant.
+     * @param <T>     le type d'une ligne analysée.
+     * @return le nombre de lignes lues.
+     * @throws IOException en cas d'erreur de lecture.
+     */
+    public <T> long read(BufferedReader reader, Function<String, T> parser, Consumer<T> sink, boolean ordered) throws IOException {
+        Deque<ForkJoinTask<List<T>>> inFlight = new ArrayDeque<>();
+        List<String> chunk = new ArrayList<>(chunkSize);
+        long lines = 0;
+
+        // En-tête
+        String line = reader.readLine();
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            lines++;
+            chunk.add(line);
+            if (chunk.size() == chunkSize) {
+                inFlight.add(submit(chunk, parser, ordered ? null : sink));
+                chunk = new ArrayList<>(chunkSize);
+                drain(inFlight, maxChunksInFlight, sink);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            inFlight.add(submit(chunk, parser, ordered ? null : sink));
+        }
+        drain(inFlight, 0, sink);
+        return lines;
+    }
+
+    private <T> ForkJoinTask<List<T>> submit(List<String> chunk, Function<String, T> parser, Consumer<T> unorderedSink) {
+        return pool.submit(() -> {
+            List<T> parsed = new ArrayList<>(chunk.size());
+            for (String line : chunk) {
+                T value = parser.apply(line);
+                if (value == null) {
+                    continue;
+                }
+                if (unorderedSink != null) {
+                    unorderedSink.accept(value);
+                } else {
+                    parsed.add(value);
+                }
+            }
+            return parsed;
+        });
+    }
+
+    /**
+     * Attend les blocs les plus anciens jusqu'à ce qu'il n'en reste que <code>remaining</code> en cours, et transmet
+     * leurs résultats (vides en mode non ordonné).
+     */
+    private static <T> void drain(Deque<ForkJoinTask<List<T>>> inFlight, int remaining, Consumer<T> sink) {
+        while (inFlight.size() > remaining) {
+            inFlight.poll().join().forEach(sink);
+        }
+    }
+}
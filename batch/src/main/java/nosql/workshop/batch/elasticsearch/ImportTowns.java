@@ -1,15 +1,12 @@
 package nosql.workshop.batch.elasticsearch;
 
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.csv.ParallelCsvReader;
 import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
+import nosql.workshop.batch.elasticsearch.util.ElasticsearchClients;
+import nosql.workshop.batch.elasticsearch.util.StreamingIndexer;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.settings.ImmutableSettings;
-import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
-
-import static org.elasticsearch.common.xcontent.XContentFactory.*;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -19,40 +16,32 @@ import java.util.Map;
 import java.util.Objects;
 
 import static nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils.checkIndexExists;
-import static nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils.dealWithFailures;
 
 /**
  * Job d'import des rues de towns_paysdeloire.csv vers ElasticSearch (/towns/town)
  */
 public class ImportTowns {
     public static void main(String[] args) throws IOException {
-        Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "elasticsearch").build();
-
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(ImportTowns.class.getResourceAsStream("/csv/towns_paysdeloire.csv")));
-             Client elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress("localhost", 9300))) {
+             Client elasticSearchClient = ElasticsearchClients.create()) {
 
             checkIndexExists("towns", elasticSearchClient);
 
-            BulkRequestBuilder bulkRequest = elasticSearchClient.prepareBulk();
-
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> insertTown(line, bulkRequest, elasticSearchClient));
-
-            BulkResponse bulkItemResponses = bulkRequest.execute().actionGet();
+            try (StreamingIndexer indexer = new StreamingIndexer(elasticSearchClient)) {
+                new ParallelCsvReader().read(reader, ImportTowns::toTown,
+                        town -> indexer.add(new IndexRequest("towns", "town").source(town)), true);
+            }
             System.out.println("C'est fini !");
-            dealWithFailures(bulkItemResponses);
         }
 
     }
 
-    private static void insertTown(String line, BulkRequestBuilder bulkRequest, Client elasticSearchClient) {
+    private static Map<String, Object> toTown(String line) {
         line = ElasticSearchBatchUtils.handleComma(line);
 
-        String[] split = line.split(",");
+        String[] split = CsvTokenizer.split(line);
 
-        String townName = split[1].replaceAll("\"", "");
+        String townName = split[1];
         Double longitude = Double.valueOf(split[6]);
         Double latitude = Double.valueOf(split[7]);
         Double[] coordinates = {longitude, latitude};
@@ -69,9 +58,6 @@ public class ImportTowns {
         submap.put("output", townName);
         submap.put("payload", subsubmap);
         map.put("townNameSuggest", submap);
-        bulkRequest.add(elasticSearchClient.prepareIndex("towns", "town")
-                        .setSource(map)
-        );
-
+        return map;
     }
 }
@@ -2,66 +2,143 @@ package nosql.workshop.batch.elasticsearch;
 
 import com.mongodb.*;
 import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
-import org.elasticsearch.action.bulk.BulkRequestBuilder;
-import org.elasticsearch.action.bulk.BulkResponse;
+import nosql.workshop.batch.elasticsearch.util.ElasticsearchClients;
+import nosql.workshop.batch.elasticsearch.util.StreamingIndexer;
+import nosql.workshop.batch.mongodb.BulkWriter;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.client.Client;
-import org.elasticsearch.client.transport.TransportClient;
-import org.elasticsearch.common.settings.ImmutableSettings;
-import org.elasticsearch.common.settings.Settings;
-import org.elasticsearch.common.transport.InetSocketTransportAddress;
 
-import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import static nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils.*;
-import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 /**
  * Transferts les documents depuis MongoDB vers Elasticsearch.
+ * <p>
+ * Les documents sont indexés en flux par {@link StreamingIndexer} : la collection n'est jamais chargée entièrement
+ * en mémoire.
+ * <p>
+ * Avec <code>-Dsync.mode=incremental</code>, seuls les documents modifiés depuis la synchronisation précédente
+ * (champ {@value BulkWriter#MODIFICATION_DATE}, daté par le serveur MongoDB) sont indexés, et les documents
+ * supprimés par {@link BulkWriter#remove(Object)} sont supprimés de l'index d'après le journal des suppressions
+ * (sauf avec <code>-Dsync.deletes=false</code>) ; un document supprimé autrement reste dans l'index jusqu'à sa
+ * recréation. La date de chaque synchronisation, lue sur le serveur MongoDB et non sur la machine du batch, est
+ * enregistrée dans la collection <code>imports</code>.
  */
 public class MongoDbToElasticsearch {
 
+    public static final String SYNC_MODE = "sync.mode";
+    public static final String INCREMENTAL_MODE = "incremental";
+    public static final String SYNC_DELETES = "sync.deletes";
+
+    private static final String SYNC_STATE_ID = "elasticsearch";
+    private static final int DELETIONS_BATCH_SIZE = 500;
+
     public static void main(String[] args) throws UnknownHostException {
 
         MongoClient mongoClient = null;
 
-        long startTime = System.currentTimeMillis();
-        Settings settings = ImmutableSettings.settingsBuilder().put("cluster.name", "elasticsearch").build();
-        try (Client elasticSearchClient = new TransportClient(settings).addTransportAddress(new InetSocketTransportAddress(ES_DEFAULT_HOST, ES_DEFAULT_PORT))){
+        try (Client elasticSearchClient = ElasticsearchClients.create()){
             checkIndexExists("installations", elasticSearchClient);
 
             mongoClient = new MongoClient();
+            DB db = mongoClient.getDB("nosql-workshop");
+            DBCollection imports = db.getCollection("imports");
+
+            // La date de synchronisation est relevée avant la lecture, pour ne rater aucune modification concurrente
+            Date syncDate = serverDate(db);
+            Date lastSync = INCREMENTAL_MODE.equals(System.getProperty(SYNC_MODE)) ? readLastSync(imports) : null;
 
-            // cursor all database objects from mongo db
-            DBCursor cursor = ElasticSearchBatchUtils.getMongoCursorToAllInstallations(mongoClient);
+            DBCursor cursor;
+            if (lastSync == null) {
+                // cursor all database objects from mongo db
+                cursor = ElasticSearchBatchUtils.getMongoCursorToAllInstallations(mongoClient);
+            } else {
+                cursor = getMongoCursorToInstallationsModifiedSince(mongoClient, lastSync);
+            }
 
-            BulkRequestBuilder bulkRequest = elasticSearchClient.prepareBulk();
+            try (StreamingIndexer indexer = new StreamingIndexer(elasticSearchClient)) {
+                while (cursor.hasNext()) {
+                    DBObject object = cursor.next();
 
-            while (cursor.hasNext()) {
-                DBObject object = cursor.next();
+                    String objectId = (String) object.get("_id");
+                    object.removeField("dateMiseAJourFiche");
+                    object.removeField(BulkWriter.CONTENT_HASH);
 
-                String objectId = (String) object.get("_id");
-                object.removeField("dateMiseAJourFiche");
+                    indexer.add(new IndexRequest("installations", "installation", objectId).source(object.toMap()));
+                }
 
-                bulkRequest.add(elasticSearchClient.prepareIndex("installations", "installation", objectId)
-                        .setSource(jsonBuilder()
-                                .startObject()
-                                .field(objectId, object)
-                                .endObject()
-                        )
-                );
+                if (lastSync != null && Boolean.parseBoolean(System.getProperty(SYNC_DELETES, "true"))) {
+                    deleteRemovedInstallations(db.getCollection("installations"), lastSync, indexer);
+                }
             }
-            BulkResponse bulkItemResponses = bulkRequest.execute().actionGet();
-
-            dealWithFailures(bulkItemResponses);
 
-            System.out.println("Inserted all documents in " + (System.currentTimeMillis() - startTime) + " ms");
-        } catch (IOException e) {
-            e.printStackTrace();
+            imports.save(new BasicDBObject("_id", SYNC_STATE_ID).append("date", syncDate));
         } finally {
             if (mongoClient != null) {
                 mongoClient.close();
             }
         }
     }
+
+    private static Date readLastSync(DBCollection imports) {
+        DBObject state = imports.findOne(new BasicDBObject("_id", SYNC_STATE_ID));
+        return state == null ? null : (Date) state.get("date");
+    }
+
+    /**
+     * Retourne l'heure du serveur MongoDB, qui date aussi les écritures de {@link BulkWriter}.
+     */
+    private static Date serverDate(DB db) {
+        CommandResult isMaster = db.command("isMaster");
+        isMaster.throwOnError();
+        return isMaster.getDate("localTime");
+    }
+
+    private static DBCursor getMongoCursorToInstallationsModifiedSince(MongoClient mongoClient, Date since) {
+        DBCollection installationsCollection = mongoClient.getDB("nosql-workshop").getCollection("installations");
+        installationsCollection.createIndex(new BasicDBObject(BulkWriter.MODIFICATION_DATE, 1));
+
+        // Borne incluse : un document écrit dans la même milliseconde que la synchronisation précédente est réindexé
+        return installationsCollection.find(new BasicDBObject(BulkWriter.MODIFICATION_DATE, new BasicDBObject("$gte", since)));
+    }
+
+    /**
+     * Supprime de l'index les installations supprimées depuis la synchronisation précédente, d'après le journal des
+     * suppressions. Une installation recréée depuis sa suppression est gardée.
+     */
+    private static void deleteRemovedInstallations(DBCollection installationsCollection, Date since, StreamingIndexer indexer) {
+        DBCollection deletions = BulkWriter.deletions(installationsCollection);
+        deletions.createIndex(new BasicDBObject(BulkWriter.DELETION_DATE, 1));
+
+        List<Object> deletedIds = new ArrayList<>();
+        try (DBCursor deleted = deletions.find(new BasicDBObject(BulkWriter.DELETION_DATE, new BasicDBObject("$gte", since)))) {
+            while (deleted.hasNext()) {
+                deletedIds.add(deleted.next().get("_id"));
+                if (deletedIds.size() == DELETIONS_BATCH_SIZE || !deleted.hasNext()) {
+                    deleteMissing(installationsCollection, deletedIds, indexer);
+                    deletedIds.clear();
+                }
+            }
+        }
+    }
+
+    private static void deleteMissing(DBCollection installationsCollection, List<Object> deletedIds, StreamingIndexer indexer) {
+        Set<Object> existing = new HashSet<>();
+        try (DBCursor ids = installationsCollection.find(new BasicDBObject("_id", new BasicDBObject("$in", deletedIds)),
+                new BasicDBObject("_id", 1))) {
+            ids.forEach(id -> existing.add(id.get("_id")));
+        }
+        for (Object id : deletedIds) {
+            if (!existing.contains(id)) {
+                indexer.add(new DeleteRequest("installations", "installation", String.valueOf(id)));
+            }
+        }
+    }
 }
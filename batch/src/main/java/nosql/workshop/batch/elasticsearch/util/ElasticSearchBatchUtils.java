@@ -16,8 +16,11 @@ import java.util.regex.Pattern;
  * Classe utilitaire pour les jobs ElasticSearch
  */
 public abstract class ElasticSearchBatchUtils {
-    public static final String ES_DEFAULT_HOST = "localhost";
-    public static final int ES_DEFAULT_PORT = 9300;
+
+    /**
+     * Coordonnées dont la virgule décimale se confond avec le séparateur CSV (ex : <code>-1,01899,46,52421</code>).
+     */
+    private static final Pattern DECIMAL_COMMAS = Pattern.compile("(.*\\d+),(\\d+,\\d+),(\\d+.*)");
 
     private ElasticSearchBatchUtils(){}
 
@@ -30,8 +33,7 @@ public abstract class ElasticSearchBatchUtils {
     }
 
     public static String handleComma(String line) {
-        Pattern pattern = Pattern.compile("(.*\\d+),(\\d+,\\d+),(\\d+.*)");
-        Matcher matcher = pattern.matcher(line);
+        Matcher matcher = DECIMAL_COMMAS.matcher(line);
 
         if(matcher.matches()){
             line = matcher.group(1) + "." + matcher.group(2) + "." + matcher.group(3);
@@ -0,0 +1,69 @@
+package nosql.workshop.batch.elasticsearch.util;
+
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+
+/**
+ * Création du client Elasticsearch des jobs.
+ * <p>
+ * Les propriétés système sont les mêmes que celles de l'application web (<code>ApplicationModule</code>), pour que
+ * les jobs et l'application partagent un même réglage :
+ * <ul>
+ * <li>{@value #CLUSTER_NAME} : nom du cluster (<code>elasticsearch</code> par défaut) ;</li>
+ * <li>{@value #HOSTS} : noeuds, sous la forme <code>hote:port</code> séparés par des virgules
+ * ({@value #DEFAULT_HOSTS} par défaut) ;</li>
+ * <li>{@value #SNIFF} : découverte des autres noeuds du cluster, pour répartir la charge ;</li>
+ * <li>{@value #PING_INTERVAL} : intervalle de vérification des noeuds, en secondes ;</li>
+ * <li>{@value #CONNECTIONS_PER_NODE} : nombre de connexions ouvertes vers chaque noeud pour les requêtes.</li>
+ * </ul>
+ */
+public final class ElasticsearchClients {
+
+    public static final String CLUSTER_NAME = "es.cluster.name";
+    public static final String HOSTS = "es.hosts";
+    public static final String SNIFF = "es.sniff";
+    public static final String PING_INTERVAL = "es.pingInterval";
+    public static final String CONNECTIONS_PER_NODE = "es.connectionsPerNode";
+
+    public static final String DEFAULT_CLUSTER_NAME = "elasticsearch";
+    public static final String DEFAULT_HOSTS = "localhost:9300";
+    public static final int DEFAULT_PING_INTERVAL = 5;
+    public static final int DEFAULT_CONNECTIONS_PER_NODE = 6;
+
+    private static final int DEFAULT_PORT = 9300;
+
+    private ElasticsearchClients() {
+    }
+
+    /**
+     * Crée un client d'après les propriétés système.
+     *
+     * @return le client, à fermer après usage.
+     */
+    public static TransportClient create() {
+        return create(System.getProperty(CLUSTER_NAME, DEFAULT_CLUSTER_NAME),
+                System.getProperty(HOSTS, DEFAULT_HOSTS),
+                Boolean.getBoolean(SNIFF),
+                Integer.getInteger(PING_INTERVAL, DEFAULT_PING_INTERVAL),
+                Integer.getInteger(CONNECTIONS_PER_NODE, DEFAULT_CONNECTIONS_PER_NODE));
+    }
+
+    public static TransportClient create(String clusterName, String hosts, boolean sniff, int pingInterval, int connectionsPerNode) {
+        Settings settings = ImmutableSettings.settingsBuilder()
+                .put("cluster.name", clusterName)
+                .put("client.transport.sniff", sniff)
+                .put("client.transport.ping_interval", pingInterval + "s")
+                .put("transport.connections_per_node.reg", connectionsPerNode)
+                .build();
+
+        TransportClient client = new TransportClient(settings);
+        for (String host : hosts.split(",")) {
+            String[] hostAndPort = host.trim().split(":");
+            int port = hostAndPort.length > 1 ? Integer.parseInt(hostAndPort[1]) : DEFAULT_PORT;
+            client.addTransportAddress(new InetSocketTransportAddress(hostAndPort[0], port));
+        }
+        return client;
+    }
+}
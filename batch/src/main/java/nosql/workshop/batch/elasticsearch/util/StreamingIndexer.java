@@ -0,0 +1,166 @@
+package nosql.workshop.batch.elasticsearch.util;
+
+import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indexe des documents en flux dans Elasticsearch.
+ * <p>
+ * Les requêtes sont envoyées par bulks limités en nombre de documents et en taille, avec un nombre borné de bulks
+ * en cours : la mémoire utilisée ne dépend pas du volume indexé. Les documents rejetés par un noeud saturé (ou
+ * appartenant à un bulk en erreur) sont renvoyés avec un délai croissant. Les paramètres se règlent par propriétés
+ * système.
+ */
+public class StreamingIndexer implements AutoCloseable {
+
+    public static final String BULK_ACTIONS = "es.bulk.actions";
+    public static final String BULK_SIZE_MB = "es.bulk.sizeMb";
+    public static final String BULK_CONCURRENT_REQUESTS = "es.bulk.concurrentRequests";
+    public static final String BULK_MAX_RETRIES = "es.bulk.maxRetries";
+
+    private static final long INITIAL_BACKOFF_MILLIS = 100;
+
+    private final BulkProcessor bulkProcessor;
+    private final int maxRetries;
+    private final long startTime = System.currentTimeMillis();
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "bulk-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<ActionRequest<?>, Integer> attempts = new ConcurrentHashMap<>();
+    private final AtomicInteger bulksInFlight = new AtomicInteger();
+    private final AtomicInteger pendingRetries = new AtomicInteger();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public StreamingIndexer(Client elasticSearchClient) {
+        this.maxRetries = Integer.getInteger(BULK_MAX_RETRIES, 3);
+        this.bulkProcessor = BulkProcessor.builder(elasticSearchClient, new RetryListener())
+                .setBulkActions(Integer.getInteger(BULK_ACTIONS, 1000))
+                .setBulkSize(new ByteSizeValue(Integer.getInteger(BULK_SIZE_MB, 5), ByteSizeUnit.MB))
+                .setConcurrentRequests(Integer.getInteger(BULK_CONCURRENT_REQUESTS, 2))
+                .build();
+    }
+
+    /**
+     * Ajoute une requête, envoyée dès que le bulk courant est plein.
+     *
+     * @param request la requête d'indexation ou de suppression.
+     */
+    public void add(ActionRequest<?> request) {
+        bulkProcessor.add(request);
+    }
+
+    /**
+     * Attend l'envoi de toutes les requêtes (renvois compris) et affiche le débit obtenu.
+     * <p>
+     * Un renvoi programmé par le dernier bulk, une fois le processeur fermé, ne peut plus être envoyé : il est
+     * compté en échec.
+     */
+    @Override
+    public void close() {
+        try {
+            do {
+                bulkProcessor.flush();
+                Thread.sleep(50);
+            } while (bulksInFlight.get() > 0 || pendingRetries.get() > 0);
+            bulkProcessor.awaitClose(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            List<Runnable> droppedRetries = retryScheduler.shutdownNow();
+            if (!droppedRetries.isEmpty()) {
+                failed.addAndGet(droppedRetries.size());
+                System.out.println(droppedRetries.size() + " renvois abandonnés à la fermeture");
+            }
+        }
+
+        long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println(indexed.get() + " documents indexés en " + duration + " ms ("
+                + (indexed.get() * 1000 / duration) + " docs/s), " + failed.get() + " en échec");
+    }
+
+    /**
+     * Renvoie une requête après un délai doublant à chaque tentative, ou l'abandonne au-delà du nombre maximum.
+     */
+    private void retry(ActionRequest<?> request, String reason) {
+        int attempt = attempts.merge(request, 1, Integer::sum);
+        if (attempt > maxRetries) {
+            attempts.remove(request);
+            failed.incrementAndGet();
+            System.out.println("Abandon après " + maxRetries + " tentatives : " + reason);
+            return;
+        }
+        pendingRetries.incrementAndGet();
+        try {
+            retryScheduler.schedule(() -> {
+                try {
+                    bulkProcessor.add(request);
+                } catch (ElasticsearchIllegalStateException e) {
+                    // Processeur fermé pendant le délai
+                    failed.incrementAndGet();
+                } finally {
+                    pendingRetries.decrementAndGet();
+                }
+            }, INITIAL_BACKOFF_MILLIS << (attempt - 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Bulk terminé après la fermeture
+            pendingRetries.decrementAndGet();
+            failed.incrementAndGet();
+        }
+    }
+
+    private class RetryListener implements BulkProcessor.Listener {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            bulksInFlight.incrementAndGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            for (BulkItemResponse item : response.getItems()) {
+                ActionRequest<?> itemRequest = request.requests().get(item.getItemId());
+                if (!item.isFailed()) {
+                    attempts.remove(itemRequest);
+                    indexed.incrementAndGet();
+                } else if (item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+                    retry(itemRequest, item.getFailureMessage());
+                } else {
+                    attempts.remove(itemRequest);
+                    failed.incrementAndGet();
+                    System.out.println(item.getFailure());
+                }
+            }
+            bulksInFlight.decrementAndGet();
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            for (ActionRequest<?> itemRequest : request.requests()) {
+                retry(itemRequest, failure.getMessage());
+            }
+            bulksInFlight.decrementAndGet();
+        }
+    }
+}
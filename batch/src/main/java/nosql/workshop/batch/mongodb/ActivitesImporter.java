@@ -3,37 +3,35 @@ package nosql.workshop.batch.mongodb;
 import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.csv.ParallelCsvReader;
 
 import java.io.*;
 
 public class ActivitesImporter {
 
     private final DBCollection installationsCollection;
+    private final int batchSize;
 
-    public ActivitesImporter(DBCollection installationsCollection) {
+    public ActivitesImporter(DBCollection installationsCollection, int batchSize) {
         this.installationsCollection = installationsCollection;
+        this.batchSize = batchSize;
     }
 
     public void run() {
         InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/activites.csv");
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> updateEquipement(line));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+             BulkWriter writer = new BulkWriter(installationsCollection, batchSize)) {
+            new ParallelCsvReader().read(reader, ActivitesImporter::toColumns, columns -> updateEquipement(columns, writer), true);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private void updateEquipement(final String line) {
-        String[] columns = line
-                .substring(1, line.length() - 1)
-                .split("\",\"");
-
+    private void updateEquipement(final String[] columns, BulkWriter writer) {
         // Programmation défensive : certaines lignes n'ont pas d'activités de définies
-        if (columns.length >= 6) {
+        if (columns.length >= 6 && !columns[5].isEmpty()) {
             String equipementId = columns[2].trim();
 
             BasicDBObject equipement = new BasicDBObject();
@@ -48,7 +46,11 @@ public class ActivitesImporter {
             BasicDBObject push = new BasicDBObject();
             push.append("$push", activites);
 
-            this.installationsCollection.update(query, push);
+            writer.updateOne(query, push);
         }
     }
+
+    static String[] toColumns(String line) {
+        return CsvTokenizer.split(line);
+    }
 }
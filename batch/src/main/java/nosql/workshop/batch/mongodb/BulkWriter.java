@@ -0,0 +1,276 @@
+package nosql.workshop.batch.mongodb;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regroupe les écritures dans MongoDB en opérations bulk non ordonnées de taille configurable, afin de limiter le
+ * nombre d'allers-retours avec la base.
+ * <p>
+ * Chaque document écrit reçoit la date de l'écriture dans le champ {@value #MODIFICATION_DATE}, utilisé par la
+ * synchronisation incrémentale vers Elasticsearch. Cette date est toujours celle du serveur MongoDB
+ * (<code>$currentDate</code>), comme la date des synchronisations : un décalage d'horloge entre les machines ne peut
+ * pas faire manquer une modification. Un remplacement ou une insertion ne pouvant pas utiliser
+ * <code>$currentDate</code>, les documents concernés sont datés par une mise à jour groupée, une fois le bulk envoyé.
+ * <p>
+ * Les suppressions sont enregistrées avec leur date dans la collection
+ * <code>&lt;collection&gt;{@value #DELETIONS_SUFFIX}</code> : la synchronisation incrémentale y lit les documents à
+ * supprimer de l'index.
+ * <p>
+ * Lors d'un import complet, {@link #removeNotSaved()} supprime les documents qui n'ont pas été réécrits par
+ * {@link #save(DBObject)} (numéros disparus du fichier), et {@link #skipUnchanged()} n'écrit pas les
+ * documents dont le contenu n'a pas changé depuis l'import précédent, pour qu'ils gardent leur date de modification
+ * et ne soient pas réindexés.
+ */
+public class BulkWriter implements AutoCloseable {
+
+    /**
+     * Propriété système permettant de configurer le nombre d'écritures par opération bulk.
+     */
+    public static final String BATCH_SIZE = "batch.size";
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Champ contenant la date de dernière modification d'un document.
+     */
+    public static final String MODIFICATION_DATE = "dateModification";
+
+    /**
+     * Suffixe de la collection journalisant les suppressions d'une collection.
+     */
+    public static final String DELETIONS_SUFFIX = ".deletions";
+
+    /**
+     * Champ contenant la date de suppression d'un document, dans le journal des suppressions.
+     */
+    public static final String DELETION_DATE = "dateSuppression";
+
+    /**
+     * Champ contenant l'empreinte du contenu d'un document, écrit par {@link #skipUnchanged()}.
+     */
+    public static final String CONTENT_HASH = "empreinte";
+
+    private final DBCollection collection;
+    private final int batchSize;
+    private final long startTime = System.currentTimeMillis();
+
+    private BulkWriteOperation bulk;
+    private final List<Object> undatedIds = new ArrayList<>();
+    private final List<Object> deletedIds = new ArrayList<>();
+    private int pending;
+    private long rows;
+
+    private Map<Object, String> existing;
+    private boolean skipUnchanged;
+    private long unchanged;
+
+    public BulkWriter(DBCollection collection, int batchSize) {
+        this.collection = collection;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Retourne la taille de batch configurée par la propriété système {@value #BATCH_SIZE}.
+     *
+     * @return le nombre d'écritures par opération bulk.
+     */
+    public static int configuredBatchSize() {
+        return Integer.getInteger(BATCH_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Relève les documents présents dans la collection, pour que {@link #removeNotSaved()} puisse supprimer ceux qui
+     * n'auront pas été écrits par {@link #save(DBObject)}.
+     *
+     * @return ce writer.
+     */
+    public BulkWriter trackSaved() {
+        loadExisting();
+        return this;
+    }
+
+    /**
+     * N'écrit pas les documents dont l'empreinte ({@value #CONTENT_HASH}) est celle déjà enregistrée. Ne convient
+     * pas si les documents sont complétés après leur écriture, puisque leur contenu final ne serait pas comparé.
+     *
+     * @return ce writer.
+     */
+    public BulkWriter skipUnchanged() {
+        loadExisting();
+        skipUnchanged = true;
+        return this;
+    }
+
+    /**
+     * Insère ou remplace un document (équivalent de <code>save</code>).
+     *
+     * @param document le document, identifié par son <code>_id</code>.
+     */
+    public void save(DBObject document) {
+        if (existing != null) {
+            boolean known = existing.containsKey(document.get("_id"));
+            String previousHash = existing.remove(document.get("_id"));
+            if (skipUnchanged) {
+                String hash = hash(document);
+                if (known && hash.equals(previousHash)) {
+                    unchanged++;
+                    return;
+                }
+                document.put(CONTENT_HASH, hash);
+            }
+        }
+        bulk().find(new BasicDBObject("_id", document.get("_id"))).upsert().replaceOne(document);
+        undatedIds.add(document.get("_id"));
+        written();
+    }
+
+    /**
+     * Insère un document.
+     *
+     * @param document le document.
+     */
+    public void insert(DBObject document) {
+        bulk().insert(document);
+        // L'identifiant est généré par le driver s'il est absent
+        undatedIds.add(document.get("_id"));
+        written();
+    }
+
+    /**
+     * Met à jour le premier document correspondant à la requête.
+     *
+     * @param query  la requête de sélection.
+     * @param update la mise à jour.
+     */
+    public void updateOne(DBObject query, DBObject update) {
+        update.put("$currentDate", new BasicDBObject(MODIFICATION_DATE, true));
+        bulk().find(query).updateOne(update);
+        written();
+    }
+
+    /**
+     * Supprime un document, et l'enregistre dans le journal des suppressions.
+     *
+     * @param id l'<code>_id</code> du document.
+     */
+    public void remove(Object id) {
+        bulk().find(new BasicDBObject("_id", id)).removeOne();
+        deletedIds.add(id);
+        written();
+    }
+
+    /**
+     * Supprime les documents présents au démarrage qui n'ont pas été écrits depuis par {@link #save(DBObject)}. A
+     * n'appeler qu'une fois toute la collection réécrite : un import interrompu ne doit rien supprimer.
+     */
+    public void removeNotSaved() {
+        if (existing == null) {
+            throw new IllegalStateException("Les documents existants ne sont pas relevés, voir trackSaved()");
+        }
+        for (Object id : existing.keySet()) {
+            remove(id);
+        }
+        existing.clear();
+    }
+
+    /**
+     * Retourne la collection journalisant les suppressions faites dans une collection.
+     *
+     * @param collection la collection dont les documents sont supprimés.
+     * @return le journal des suppressions.
+     */
+    public static DBCollection deletions(DBCollection collection) {
+        return collection.getDB().getCollection(collection.getName() + DELETIONS_SUFFIX);
+    }
+
+    /**
+     * Envoie les écritures en attente.
+     */
+    public void flush() {
+        if (pending > 0) {
+            bulk.execute();
+            bulk = null;
+            pending = 0;
+        }
+        if (!undatedIds.isEmpty()) {
+            collection.update(new BasicDBObject("_id", new BasicDBObject("$in", undatedIds)),
+                    new BasicDBObject("$currentDate", new BasicDBObject(MODIFICATION_DATE, true)), false, true);
+            undatedIds.clear();
+        }
+        if (!deletedIds.isEmpty()) {
+            BulkWriteOperation log = deletions(collection).initializeUnorderedBulkOperation();
+            for (Object id : deletedIds) {
+                log.find(new BasicDBObject("_id", id)).upsert()
+                        .updateOne(new BasicDBObject("$currentDate", new BasicDBObject(DELETION_DATE, true)));
+            }
+            log.execute();
+            deletedIds.clear();
+        }
+    }
+
+    /**
+     * Envoie les écritures en attente et affiche le débit obtenu.
+     */
+    @Override
+    public void close() {
+        flush();
+        long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.println(collection.getName() + " : " + rows + " écritures en " + duration + " ms ("
+                + (rows * 1000 / duration) + " lignes/s, batch de " + batchSize + ")"
+                + (skipUnchanged ? ", " + unchanged + " documents inchangés" : ""));
+    }
+
+    private void loadExisting() {
+        if (existing == null) {
+            existing = new HashMap<>();
+            try (DBCursor cursor = collection.find(new BasicDBObject(), new BasicDBObject(CONTENT_HASH, 1))) {
+                for (DBObject document : cursor) {
+                    existing.put(document.get("_id"), (String) document.get(CONTENT_HASH));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcule l'empreinte MD5 de la sérialisation JSON d'un document.
+     */
+    private static String hash(DBObject document) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5")
+                    .digest(JSON.serialize(document).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private BulkWriteOperation bulk() {
+        if (bulk == null) {
+            bulk = collection.initializeUnorderedBulkOperation();
+        }
+        return bulk;
+    }
+
+    private void written() {
+        rows++;
+        if (++pending >= batchSize) {
+            flush();
+        }
+    }
+}
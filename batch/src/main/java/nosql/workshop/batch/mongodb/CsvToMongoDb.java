@@ -1,14 +1,27 @@
 package nosql.workshop.batch.mongodb;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.MongoClient;
 
+import java.util.Date;
+
 /**
  * Importe les données issues des fichiers CSV dans la base MongoDB.
+ * <p>
+ * Les écritures sont regroupées en opérations bulk dont la taille se règle avec la propriété système
+ * <code>batch.size</code> (ex : <code>-Dbatch.size=5000</code>).
+ * <p>
+ * Avec <code>-Dimport.mode=join</code>, les trois fichiers sont joints en mémoire et chaque installation n'est écrite
+ * qu'une fois (voir {@link InstallationsJoinImporter}). Seul ce mode laisse intactes les installations inchangées :
+ * c'est celui à utiliser pour les imports réguliers suivis d'une synchronisation incrémentale.
  */
 public class CsvToMongoDb {
 
+    public static final String IMPORT_MODE = "import.mode";
+    public static final String JOIN_MODE = "join";
+
     public static void main(String[] args) {
         MongoClient mongoClient = null;
         try {
@@ -20,9 +33,17 @@ public class CsvToMongoDb {
             DBCollection installationsCollection = db.getCollection("installations");
 
             // Import des données
-            new InstallationsImporter(installationsCollection).run();
-            new EquipementsImporter(installationsCollection).run();
-            new ActivitesImporter(installationsCollection).run();
+            int batchSize = BulkWriter.configuredBatchSize();
+            if (JOIN_MODE.equals(System.getProperty(IMPORT_MODE))) {
+                new InstallationsJoinImporter(installationsCollection, batchSize).run();
+            } else {
+                new InstallationsImporter(installationsCollection, batchSize).run();
+                new EquipementsImporter(installationsCollection, batchSize).run();
+                new ActivitesImporter(installationsCollection, batchSize).run();
+            }
+
+            // Enregistrement de la date d'import, surveillée par l'application pour rafraîchir ses caches
+            db.getCollection("imports").save(new BasicDBObject("_id", "installations").append("date", new Date()));
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -4,6 +4,8 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.csv.ParallelCsvReader;
 import org.elasticsearch.index.analysis.CharMatcher;
 
 import java.io.*;
@@ -11,45 +13,51 @@ import java.io.*;
 public class EquipementsImporter {
 
     private final DBCollection installationsCollection;
+    private final int batchSize;
 
-    public EquipementsImporter(DBCollection installationsCollection) {
+    public EquipementsImporter(DBCollection installationsCollection, int batchSize) {
         this.installationsCollection = installationsCollection;
+        this.batchSize = batchSize;
     }
 
     public void run() {
         InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/equipements.csv");
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+             BulkWriter writer = new BulkWriter(installationsCollection, batchSize)) {
 
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> updateInstallation(line));
+            new ParallelCsvReader().read(reader, CsvTokenizer::split, columns -> updateInstallation(columns, writer), true);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private void updateInstallation(final String line) {
-        String[] columns = line.split(",");
-
+    private void updateInstallation(final String[] columns, BulkWriter writer) {
         String installationId = columns[2];
 
         BasicDBObject query = new BasicDBObject();
         query.append("_id", installationId);
 
-        BasicDBObject equipement = new BasicDBObject()
-                .append("numero", columns[4])
-                .append("nom", columns[5])
-                .append("type", columns[7])
-                .append("famille", columns[9]);
-
         BasicDBObject equipements = new BasicDBObject();
-        equipements.append("equipements", equipement);
+        equipements.append("equipements", toEquipement(columns));
 
         BasicDBObject push = new BasicDBObject();
         push.append("$push", equipements);
 
 
-        this.installationsCollection.update(query, push);
+        writer.updateOne(query, push);
+    }
+
+    /**
+     * Transforme les colonnes d'une ligne du fichier des équipements en sous-document d'installation.
+     *
+     * @param columns les colonnes de la ligne.
+     * @return le document de l'équipement.
+     */
+    public static BasicDBObject toEquipement(String[] columns) {
+        return new BasicDBObject()
+                .append("numero", columns[4])
+                .append("nom", columns[5])
+                .append("type", columns[7])
+                .append("famille", columns[9]);
     }
 }
@@ -1,6 +1,8 @@
 package nosql.workshop.batch.mongodb;
 
 import com.mongodb.*;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.csv.ParallelCsvReader;
 import org.elasticsearch.common.joda.time.DateTime;
 import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
 
@@ -9,33 +11,42 @@ import java.time.format.DateTimeFormatter;
 
 /**
  * Importe les 'installations' dans MongoDB.
+ * <p>
+ * Les installations disparues du fichier sont supprimées et journalisées. Les équipements et activités étant ajoutés
+ * ensuite par d'autres passes, toutes les installations sont réécrites, donc datées et réindexées : le mode
+ * <code>join</code> de {@link CsvToMongoDb} ne réécrit que les installations modifiées.
  */
 public class InstallationsImporter {
 
     private final DBCollection installationsCollection;
+    private final int batchSize;
 
-    public InstallationsImporter(DBCollection installationsCollection) {
+    public InstallationsImporter(DBCollection installationsCollection, int batchSize) {
         this.installationsCollection = installationsCollection;
+        this.batchSize = batchSize;
     }
 
     public void run() {
         InputStream is = CsvToMongoDb.class.getResourceAsStream("/csv/installations.csv");
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+             BulkWriter writer = new BulkWriter(installationsCollection, batchSize).trackSaved()) {
 
-            reader.lines()
-                    .skip(1)
-                    .filter(line -> line.length() > 0)
-                    .forEach(line -> installationsCollection.save(toDbObject(line)));
+            new ParallelCsvReader().read(reader, InstallationsImporter::toDbObject, writer::save, true);
+            writer.removeNotSaved();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
-    private DBObject toDbObject(final String line) {
-        String[] columns = line
-                .substring(1, line.length() - 1)
-                .split("\",\"");
+    /**
+     * Transforme une ligne du fichier des installations en document MongoDB.
+     *
+     * @param line la ligne CSV.
+     * @return le document de l'installation, sans ses équipements.
+     */
+    public static DBObject toDbObject(final String line) {
+        String[] columns = CsvTokenizer.split(line);
 
         BasicDBList coordinates = new BasicDBList();
         coordinates.add(Double.parseDouble((columns[9] == null || columns[9].isEmpty()) ? "0" : columns[9]));
@@ -0,0 +1,104 @@
+package nosql.workshop.batch.mongodb;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.csv.ParallelCsvReader;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Importe les installations en une seule passe : les activités et les équipements sont d'abord joints en mémoire,
+ * puis chaque installation est écrite une seule fois, complète.
+ * <p>
+ * Contrairement à l'enchaînement {@link InstallationsImporter}, {@link EquipementsImporter} et
+ * {@link ActivitesImporter}, aucun document n'est réécrit après son insertion. Seuls les équipements et leurs
+ * activités sont gardés en mémoire, dans des maps indexées par numéro ; les installations sont lues en flux.
+ * <p>
+ * La mémoire utilisée croît donc avec le nombre d'équipements et d'activités, sans borne : pour des fichiers ne
+ * tenant pas en mémoire, utiliser l'import en trois passes.
+ * <p>
+ * Chaque installation étant écrite complète, celles dont le contenu n'a pas changé depuis l'import précédent ne
+ * sont pas réécrites ({@link BulkWriter#skipUnchanged()}) : seules les installations modifiées sont réindexées par
+ * la synchronisation incrémentale. Les installations disparues du fichier sont supprimées et journalisées.
+ */
+public class InstallationsJoinImporter {
+
+    private final DBCollection installationsCollection;
+    private final int batchSize;
+
+    public InstallationsJoinImporter(DBCollection installationsCollection, int batchSize) {
+        this.installationsCollection = installationsCollection;
+        this.batchSize = batchSize;
+    }
+
+    public void run() {
+        Map<Long, BasicDBList> activitesByEquipement = new HashMap<>();
+        readLines("/csv/activites.csv", ActivitesImporter::toColumns, columns -> {
+            // Programmation défensive : certaines lignes n'ont pas d'activités de définies
+            if (columns.length >= 6 && !columns[5].isEmpty()) {
+                long equipementId = toKey(columns[2]);
+                BasicDBList activites = activitesByEquipement.get(equipementId);
+                if (activites == null) {
+                    activites = new BasicDBList();
+                    activitesByEquipement.put(equipementId, activites);
+                }
+                activites.add(columns[5]);
+            }
+        });
+
+        Map<Long, BasicDBList> equipementsByInstallation = new HashMap<>();
+        readLines("/csv/equipements.csv", CsvTokenizer::split, columns -> {
+            BasicDBObject equipement = EquipementsImporter.toEquipement(columns);
+            BasicDBList activites = activitesByEquipement.remove(toKey(columns[4]));
+            if (activites != null) {
+                equipement.append("activites", activites);
+            }
+
+            long installationId = toKey(columns[2]);
+            BasicDBList equipements = equipementsByInstallation.get(installationId);
+            if (equipements == null) {
+                equipements = new BasicDBList();
+                equipementsByInstallation.put(installationId, equipements);
+            }
+            equipements.add(equipement);
+        });
+
+        try (BulkWriter writer = new BulkWriter(installationsCollection, batchSize).trackSaved().skipUnchanged()) {
+            readLines("/csv/installations.csv", InstallationsImporter::toDbObject, installation -> {
+                BasicDBList equipements = equipementsByInstallation.remove(toKey((String) installation.get("_id")));
+                if (equipements != null) {
+                    installation.put("equipements", equipements);
+                }
+                writer.save(installation);
+            });
+            writer.removeNotSaved();
+        }
+    }
+
+    /**
+     * Les numéros d'installation et d'équipement sont numériques (éventuellement entourés d'espaces).
+     */
+    private static long toKey(String numero) {
+        return Long.parseLong(numero.trim());
+    }
+
+    /**
+     * Les lignes sont analysées en parallèle mais transmises dans l'ordre, depuis le thread appelant : les maps
+     * n'ont pas besoin d'être thread-safe.
+     */
+    private static <T> void readLines(String resource, Function<String, T> parser, Consumer<T> consumer) {
+        InputStream is = CsvToMongoDb.class.getResourceAsStream(resource);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+            new ParallelCsvReader().read(reader, parser, consumer, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nosql.workshop.benchmarks;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.elasticsearch.util.ElasticSearchBatchUtils;
+import nosql.workshop.batch.mongodb.EquipementsImporter;
+import nosql.workshop.batch.mongodb.InstallationsImporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Découpage des lignes CSV et construction des documents lors des imports du batch.
+ * <p>
+ * Chaque appel traite la ligne suivante du fichier, pour mesurer la diversité réelle des lignes plutôt qu'une seule
+ * ligne restée en cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvParsingBenchmark {
+
+    private String[] installationLines;
+    private String[] activiteLines;
+    private String[] townLines;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        installationLines = Fixtures.lines(Fixtures.INSTALLATIONS_CSV);
+        activiteLines = Fixtures.lines(Fixtures.ACTIVITES_CSV);
+        townLines = Fixtures.lines(Fixtures.TOWNS_CSV);
+    }
+
+    @Benchmark
+    public String[] splitInstallationLine() {
+        return CsvTokenizer.split(next(installationLines));
+    }
+
+    @Benchmark
+    public DBObject installationToDbObject() {
+        return InstallationsImporter.toDbObject(next(installationLines));
+    }
+
+    @Benchmark
+    public BasicDBObject equipementToDbObject() {
+        return EquipementsImporter.toEquipement(CsvTokenizer.split(next(activiteLines)));
+    }
+
+    @Benchmark
+    public String handleComma() {
+        return ElasticSearchBatchUtils.handleComma(next(townLines));
+    }
+
+    /**
+     * Chaque benchmark ne parcourt qu'un fichier : un seul compteur suffit.
+     */
+    private String next(String[] lines) {
+        if (++next >= lines.length) {
+            next = 0;
+        }
+        return lines[next];
+    }
+}
@@ -0,0 +1,88 @@
+package nosql.workshop.benchmarks;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.mongodb.EquipementsImporter;
+import nosql.workshop.batch.mongodb.InstallationsImporter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Jeux de données des benchmarks, lus une fois en mémoire depuis les fichiers CSV du module <code>batch</code>.
+ * <p>
+ * Le fichier des équipements n'étant pas livré avec le projet, les équipements sont construits à partir des lignes
+ * du fichier des activités, découpées par le même tokenizer et de longueur comparable.
+ */
+final class Fixtures {
+
+    static final String INSTALLATIONS_CSV = "/csv/installations.csv";
+    static final String ACTIVITES_CSV = "/csv/activites.csv";
+    static final String TOWNS_CSV = "/csv/towns_paysdeloire.csv";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Lit les lignes d'un fichier CSV, sans la ligne d'en-tête.
+     *
+     * @param resource le chemin du fichier dans le classpath.
+     * @return les lignes non vides.
+     */
+    static String[] lines(String resource) {
+        InputStream is = Fixtures.class.getResourceAsStream(resource);
+        if (is == null) {
+            throw new IllegalStateException("Fichier introuvable dans le classpath : " + resource);
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * @return les documents MongoDB des installations, tels que créés par l'import.
+     */
+    static List<DBObject> installationDocuments() {
+        List<DBObject> installations = new ArrayList<>();
+        for (String line : lines(INSTALLATIONS_CSV)) {
+            installations.add(InstallationsImporter.toDbObject(line));
+        }
+        return installations;
+    }
+
+    /**
+     * @return les sous-documents des équipements, avec leur activité.
+     */
+    static List<DBObject> equipementDocuments() {
+        List<DBObject> equipements = new ArrayList<>();
+        for (String line : lines(ACTIVITES_CSV)) {
+            String[] columns = CsvTokenizer.split(line);
+            if (columns.length >= 10) {
+                BasicDBList activites = new BasicDBList();
+                activites.add(columns[5]);
+                BasicDBObject equipement = EquipementsImporter.toEquipement(columns);
+                equipement.append("activites", activites);
+                equipements.add(equipement);
+            }
+        }
+        return equipements;
+    }
+}
@@ -0,0 +1,105 @@
+package nosql.workshop.benchmarks;
+
+import com.mongodb.DBObject;
+import nosql.workshop.services.SpatialIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recherche géographique en mémoire ({@link SpatialIndex}), comparée au parcours de toutes les installations.
+ * <p>
+ * Les points de recherche sont tirés dans l'emprise de la région, avec une graine fixe. La recherche par MongoDB
+ * (<code>$near</code>) demande une base et ne peut être mesurée ici.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoSearchBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+
+    /**
+     * Rayon de recherche, en mètres.
+     */
+    @Param({"1000", "5000", "20000"})
+    public double distance;
+
+    private SpatialIndex index;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] pointLatitudes;
+    private double[] pointLongitudes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<DBObject> installations = Fixtures.installationDocuments();
+        SpatialIndex.Builder builder = new SpatialIndex.Builder();
+        latitudes = new double[installations.size()];
+        longitudes = new double[installations.size()];
+        for (int i = 0; i < installations.size(); i++) {
+            DBObject installation = installations.get(i);
+            List<?> coordinates = (List<?>) ((DBObject) installation.get("location")).get("coordinates");
+            longitudes[i] = ((Number) coordinates.get(0)).doubleValue();
+            latitudes[i] = ((Number) coordinates.get(1)).doubleValue();
+            builder.add((String) installation.get("_id"), new double[]{longitudes[i], latitudes[i]});
+        }
+        index = builder.build();
+
+        Random random = new Random(42);
+        pointLatitudes = new double[POINT_COUNT];
+        pointLongitudes = new double[POINT_COUNT];
+        for (int i = 0; i < POINT_COUNT; i++) {
+            pointLatitudes[i] = 46.3 + random.nextDouble() * 2.3;
+            pointLongitudes[i] = -2.6 + random.nextDouble() * 3.5;
+        }
+    }
+
+    @Benchmark
+    public SpatialIndex.Result withinDistance() {
+        int point = nextPoint();
+        return index.withinDistance(pointLatitudes[point], pointLongitudes[point], distance);
+    }
+
+    @Benchmark
+    public SpatialIndex.Result nearest() {
+        int point = nextPoint();
+        return index.nearest(pointLatitudes[point], pointLongitudes[point], 10);
+    }
+
+    /**
+     * Référence : distance calculée pour chaque installation.
+     */
+    @Benchmark
+    public int scanWithinDistance() {
+        int point = nextPoint();
+        int found = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if (SpatialIndex.distance(pointLatitudes[point], pointLongitudes[point], latitudes[i], longitudes[i]) <= distance) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private int nextPoint() {
+        next = (next + 1) & (POINT_COUNT - 1);
+        return next;
+    }
+}
@@ -0,0 +1,191 @@
+package nosql.workshop.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import nosql.workshop.model.Equipement;
+import nosql.workshop.model.Installation;
+import nosql.workshop.model.suggest.TownSuggest;
+import nosql.workshop.services.TownGazetteer;
+import org.jongo.bson.Bson;
+import org.jongo.bson.BsonDocument;
+import org.jongo.marshall.Unmarshaller;
+import org.jongo.marshall.jackson.JacksonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lecture et écriture JSON des objets du modèle, sur les chemins empruntés par l'application :
+ * <ul>
+ * <li>lecture des documents Elasticsearch, directement depuis les octets de la réponse, comparée à l'ancien
+ * chemin (copie de la source dans une <code>String</code>, puis <code>ObjectMapper.readValue</code>) ;</li>
+ * <li>lecture des documents MongoDB par Jongo, depuis le BSON ;</li>
+ * <li>écriture des réponses de l'API.</li>
+ * </ul>
+ * Les allocations par document se comparent en lançant le benchmark avec <code>-prof gc</code>
+ * (<code>gc.alloc.rate.norm</code>).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JacksonBenchmark {
+
+    private ObjectMapper mapper;
+    private ObjectReader installationReader;
+    private ObjectReader equipementReader;
+    private ObjectReader townSuggestReader;
+    private ObjectWriter writer;
+    private Unmarshaller jongoUnmarshaller;
+
+    private byte[] hitsBuffer;
+    private int[] sourceOffsets;
+    private int[] sourceLengths;
+    private BsonDocument[] installationBson;
+    private Installation[] installations;
+    private byte[][] equipementBytes;
+    private Equipement[] equipements;
+    private byte[][] townSuggestBytes;
+    private TownSuggest[] townSuggests;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Configuration de SearchService
+        mapper = new ObjectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        installationReader = mapper.reader(Installation.class);
+        equipementReader = mapper.reader(Equipement.class);
+        townSuggestReader = mapper.reader(TownSuggest.class);
+        writer = new ObjectMapper().writer();
+        jongoUnmarshaller = new JacksonMapper.Builder().build().getUnmarshaller();
+
+        List<DBObject> installationDocuments = Fixtures.installationDocuments();
+        int count = installationDocuments.size();
+        sourceOffsets = new int[count];
+        sourceLengths = new int[count];
+        installationBson = new BsonDocument[count];
+        installations = new Installation[count];
+        // Les sources des hits sont des tranches du tampon de la réponse Elasticsearch
+        ByteArrayOutputStream hits = new ByteArrayOutputStream();
+        for (int i = 0; i < count; i++) {
+            byte[] source = JSON.serialize(installationDocuments.get(i)).getBytes(StandardCharsets.UTF_8);
+            sourceOffsets[i] = hits.size();
+            sourceLengths[i] = source.length;
+            hits.write(source, 0, source.length);
+            installationBson[i] = Bson.createDocument(installationDocuments.get(i));
+            installations[i] = jongoUnmarshaller.unmarshall(installationBson[i], Installation.class);
+        }
+        hitsBuffer = hits.toByteArray();
+
+        List<DBObject> equipementDocuments = Fixtures.equipementDocuments();
+        equipementBytes = new byte[equipementDocuments.size()][];
+        equipements = new Equipement[equipementDocuments.size()];
+        for (int i = 0; i < equipements.length; i++) {
+            equipementBytes[i] = JSON.serialize(equipementDocuments.get(i)).getBytes(StandardCharsets.UTF_8);
+            equipements[i] = equipementReader.readValue(equipementBytes[i]);
+        }
+
+        townSuggests = townSuggests();
+        townSuggestBytes = new byte[townSuggests.length][];
+        for (int i = 0; i < townSuggests.length; i++) {
+            townSuggestBytes[i] = writer.writeValueAsBytes(townSuggests[i]);
+        }
+    }
+
+    /**
+     * Villes du fichier, localisées par le référentiel en mémoire.
+     */
+    private static TownSuggest[] townSuggests() {
+        TownGazetteer gazetteer = new TownGazetteer();
+        List<TownSuggest> towns = new ArrayList<>();
+        for (String line : Fixtures.lines(Fixtures.TOWNS_CSV)) {
+            String name = line.split(",")[1].replace("\"", "");
+            Double[] location = gazetteer.getLocation(name);
+            if (location != null) {
+                towns.add(new TownSuggest(name, Arrays.asList(location)));
+            }
+        }
+        return towns.toArray(new TownSuggest[towns.size()]);
+    }
+
+    /**
+     * Chemin actuel de <code>SearchService</code> : lecture de la tranche d'octets par un <code>ObjectReader</code>
+     * préparé.
+     */
+    @Benchmark
+    public Installation readInstallationFromBytes() throws IOException {
+        int hit = next(sourceOffsets.length);
+        return installationReader.readValue(hitsBuffer, sourceOffsets[hit], sourceLengths[hit]);
+    }
+
+    /**
+     * Ancien chemin : <code>getSourceAsString()</code> copie la source dans une <code>String</code>, puis
+     * <code>readValue(String, Class)</code> résout le type à chaque appel.
+     */
+    @Benchmark
+    public Installation readInstallationFromString() throws IOException {
+        int hit = next(sourceOffsets.length);
+        String source = new String(hitsBuffer, sourceOffsets[hit], sourceLengths[hit], StandardCharsets.UTF_8);
+        return mapper.readValue(source, Installation.class);
+    }
+
+    @Benchmark
+    public Installation unmarshallInstallationFromBson() {
+        return jongoUnmarshaller.unmarshall(installationBson[next(installationBson.length)], Installation.class);
+    }
+
+    @Benchmark
+    public byte[] writeInstallation() throws JsonProcessingException {
+        return writer.writeValueAsBytes(installations[next(installations.length)]);
+    }
+
+    @Benchmark
+    public Equipement readEquipement() throws IOException {
+        return equipementReader.readValue(equipementBytes[next(equipementBytes.length)]);
+    }
+
+    @Benchmark
+    public byte[] writeEquipement() throws JsonProcessingException {
+        return writer.writeValueAsBytes(equipements[next(equipements.length)]);
+    }
+
+    @Benchmark
+    public TownSuggest readTownSuggest() throws IOException {
+        return townSuggestReader.readValue(townSuggestBytes[next(townSuggestBytes.length)]);
+    }
+
+    @Benchmark
+    public byte[] writeTownSuggest() throws JsonProcessingException {
+        return writer.writeValueAsBytes(townSuggests[next(townSuggests.length)]);
+    }
+
+    private int next(int length) {
+        if (++next >= length) {
+            next = 0;
+        }
+        return next;
+    }
+}
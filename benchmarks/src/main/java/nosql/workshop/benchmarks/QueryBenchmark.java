@@ -0,0 +1,95 @@
+package nosql.workshop.benchmarks;
+
+import com.mongodb.DBObject;
+import nosql.workshop.services.GeoCursor;
+import nosql.workshop.services.Projection;
+import org.jongo.marshall.jackson.JacksonMapper;
+import org.jongo.query.QueryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction des requêtes Jongo de <code>InstallationService</code>.
+ * <p>
+ * Jongo analyse chaque chaîne de requête (paramètres <code>#</code> compris) à chaque appel à <code>find</code>,
+ * <code>projection</code>, <code>sort</code> ou <code>and</code> : ce coût est payé avant même l'envoi de la
+ * requête à MongoDB. Les requêtes sont construites ici avec la fabrique utilisée par <code>Jongo</code>, sans base.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final String TEXT_SCORE_FIELD = "score";
+
+    private QueryFactory queryFactory;
+    private String[] numeros;
+    private GeoCursor geoCursor;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        queryFactory = new JacksonMapper.Builder().build().getQueryFactory();
+        numeros = Fixtures.installationDocuments().stream()
+                .map(installation -> (String) installation.get("_id"))
+                .toArray(String[]::new);
+        // Deuxième page d'une recherche géographique : distance minimale et numéros déjà retournés
+        geoCursor = GeoCursor.decode("1523.7," + numeros[0] + "," + numeros[1] + "," + numeros[2]);
+    }
+
+    @Benchmark
+    public DBObject findOne() {
+        return queryFactory.createQuery("{_id: #}", nextNumero()).toDBObject();
+    }
+
+    @Benchmark
+    public void listAfter(Blackhole blackhole) {
+        blackhole.consume(queryFactory.createQuery("{_id: {$gt: #}}", nextNumero()).toDBObject());
+        blackhole.consume(queryFactory.createQuery(Projection.SUMMARY_VIEW.getMongoProjection()).toDBObject());
+        blackhole.consume(queryFactory.createQuery("{_id: 1}").toDBObject());
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        blackhole.consume(queryFactory.createQuery("{$text: {$search: #}}", "piscine nantes").toDBObject());
+        blackhole.consume(queryFactory.createQuery(Projection.ALL.getMongoProjectionWithTextScore(TEXT_SCORE_FIELD)).toDBObject());
+        blackhole.consume(queryFactory.createQuery("{" + TEXT_SCORE_FIELD + ": {$meta: 'textScore'}}").toDBObject());
+    }
+
+    @Benchmark
+    public void geosearch(Blackhole blackhole) {
+        blackhole.consume(queryFactory.createQuery(
+                "{location: {$near: {$geometry: {type: 'Point', coordinates: [#, #]}, $minDistance: #, $maxDistance: #}}, _id: {$nin: #}}",
+                -1.553621, 47.218371, geoCursor.getMinDistance(), 5000.0, geoCursor.getExcluded()).toDBObject());
+        blackhole.consume(queryFactory.createQuery(Projection.SUMMARY_VIEW.getMongoProjectionWithLocation()).toDBObject());
+    }
+
+    @Benchmark
+    public void countByActivity(Blackhole blackhole) {
+        blackhole.consume(queryFactory.createQuery("{$unwind: '$equipements'}").toDBObject());
+        blackhole.consume(queryFactory.createQuery("{$unwind: '$equipements.activites'}").toDBObject());
+        blackhole.consume(queryFactory.createQuery("{$group: {_id: '$equipements.activites', total: {$sum: 1}}}").toDBObject());
+        blackhole.consume(queryFactory.createQuery("{$project: {_id: 0, activite: '$_id', total: 1}}").toDBObject());
+    }
+
+    private String nextNumero() {
+        if (++next >= numeros.length) {
+            next = 0;
+        }
+        return numeros[next];
+    }
+}
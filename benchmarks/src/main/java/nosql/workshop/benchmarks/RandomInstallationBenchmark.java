@@ -0,0 +1,128 @@
+package nosql.workshop.benchmarks;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import nosql.workshop.batch.mongodb.BulkWriter;
+import nosql.workshop.metrics.Metrics;
+import nosql.workshop.model.Installation;
+import nosql.workshop.services.ImportMonitor;
+import nosql.workshop.services.InstallationService;
+import nosql.workshop.services.MongoDB;
+import org.jongo.MongoCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tirage d'une installation aléatoire par {@link InstallationService#random()}, selon la taille de la collection.
+ * <p>
+ * Le service est interrogé tel qu'en production, sur un <code>mongod</code> embarqué (téléchargé au premier
+ * lancement) alimenté avec <code>size</code> installations copiées du fichier CSV. L'ancienne version, qui lisait
+ * toute la collection pour en garder un élément, est reproduite par {@link #listAll()} : son temps croît avec la
+ * collection, alors que celui de {@link #random()} ne doit pas en dépendre (hors rechargement des identifiants,
+ * toutes les 5 minutes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomInstallationBenchmark {
+
+    /**
+     * Nombre d'installations dans la collection.
+     */
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private MongodExecutable mongod;
+    private MongoDB mongoDB;
+    private ImportMonitor importMonitor;
+    private InstallationService installationService;
+    private MongoCollection installations;
+
+    @Setup
+    public void setUp() throws IOException {
+        int port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(new MongodConfigBuilder()
+                .version(Version.Main.PRODUCTION)
+                .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+
+        seed(port);
+
+        mongoDB = new MongoDB("localhost", port, 10, 5, 2000, 2000, 0);
+        importMonitor = new ImportMonitor(mongoDB, 60);
+        installationService = new InstallationService(mongoDB, importMonitor, new Metrics(), 1000, 60);
+        installations = mongoDB.getJongo().getCollection(InstallationService.COLLECTION_NAME);
+    }
+
+    /**
+     * Copie les installations du fichier CSV jusqu'à la taille demandée, avec des numéros de 9 chiffres.
+     */
+    private void seed(int port) throws IOException {
+        List<DBObject> documents = Fixtures.installationDocuments();
+        MongoClient mongoClient = new MongoClient("localhost", port);
+        try (BulkWriter writer = new BulkWriter(mongoClient.getDB(MongoDB.DB_NAME)
+                .getCollection(InstallationService.COLLECTION_NAME), BulkWriter.DEFAULT_BATCH_SIZE)) {
+            for (int i = 0; i < size; i++) {
+                DBObject document = new BasicDBObject(documents.get(i % documents.size()).toMap());
+                document.put("_id", String.valueOf(440000000 + i));
+                writer.save(document);
+            }
+        } finally {
+            mongoClient.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        importMonitor.close();
+        mongoDB.close();
+        mongod.stop();
+    }
+
+    /**
+     * Version actuelle : tirage parmi les identifiants en cache, puis lecture par <code>_id</code>.
+     */
+    @Benchmark
+    public Installation random() {
+        return installationService.random();
+    }
+
+    /**
+     * Ancienne version : toute la collection est lue pour en tirer un élément.
+     */
+    @Benchmark
+    public Installation listAll() {
+        List<Installation> all = new ArrayList<>();
+        for (Installation installation : installations.find().as(Installation.class)) {
+            all.add(installation);
+        }
+        return all.get(ThreadLocalRandom.current().nextInt(all.size()));
+    }
+}
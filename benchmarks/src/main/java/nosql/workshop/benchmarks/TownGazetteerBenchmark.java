@@ -0,0 +1,70 @@
+package nosql.workshop.benchmarks;
+
+import nosql.workshop.model.suggest.TownSuggest;
+import nosql.workshop.services.TownGazetteer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suggestion et localisation des villes par le référentiel en mémoire (<code>towns.backend=embedded</code>).
+ * <p>
+ * Les préfixes sont ceux saisis au fil de la frappe : de 1 à 4 lettres du nom de chaque ville, en minuscules.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TownGazetteerBenchmark {
+
+    private TownGazetteer gazetteer;
+    private String[] names;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        gazetteer = new TownGazetteer();
+        String[] lines = Fixtures.lines(Fixtures.TOWNS_CSV);
+        names = new String[lines.length];
+        Set<String> typed = new LinkedHashSet<>();
+        for (int i = 0; i < lines.length; i++) {
+            names[i] = lines[i].split(",")[1].replace("\"", "");
+            for (int length = 1; length <= Math.min(4, names[i].length()); length++) {
+                typed.add(names[i].substring(0, length).toLowerCase());
+            }
+        }
+        prefixes = typed.toArray(new String[typed.size()]);
+    }
+
+    @Benchmark
+    public List<TownSuggest> suggest() {
+        return gazetteer.suggest(prefixes[next(prefixes.length)]);
+    }
+
+    @Benchmark
+    public Double[] getLocation() {
+        return gazetteer.getLocation(names[next(names.length)]);
+    }
+
+    private int next(int length) {
+        if (++next >= length) {
+            next = 0;
+        }
+        return next;
+    }
+}
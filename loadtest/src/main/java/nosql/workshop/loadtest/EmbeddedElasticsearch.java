@@ -0,0 +1,77 @@
+package nosql.workshop.loadtest;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.node.NodeBuilder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Noeud Elasticsearch démarré dans la JVM du tir de charge.
+ * <p>
+ * Le noeud n'utilise pas le transport local (<code>local(true)</code>) : l'application s'y connecte comme en
+ * production, avec un <code>TransportClient</code> sur un port TCP. Le noeud est seul dans son cluster (pas de
+ * découverte multicast), sans réplique ni API HTTP, et ses données sont écrites dans un répertoire temporaire.
+ */
+class EmbeddedElasticsearch implements AutoCloseable {
+
+    static final String CLUSTER_NAME = "nosql-workshop-loadtest";
+
+    private final int port;
+    private final Node node;
+
+    private EmbeddedElasticsearch(int port, Node node) {
+        this.port = port;
+        this.node = node;
+    }
+
+    /**
+     * Démarre un noeud sur un port libre et attend qu'il soit prêt.
+     *
+     * @return le noeud démarré.
+     * @throws IOException si le répertoire des données ne peut pas être créé.
+     */
+    static EmbeddedElasticsearch start() throws IOException {
+        int port = freePort();
+        Path home = Files.createTempDirectory("loadtest-es");
+        Node node = NodeBuilder.nodeBuilder()
+                .clusterName(CLUSTER_NAME)
+                .settings(ImmutableSettings.settingsBuilder()
+                        .put("path.home", home.toString())
+                        .put("network.host", "localhost")
+                        .put("transport.tcp.port", port)
+                        .put("http.enabled", false)
+                        .put("discovery.zen.ping.multicast.enabled", false)
+                        .put("index.number_of_shards", 1)
+                        .put("index.number_of_replicas", 0))
+                .node();
+        node.client().admin().cluster().prepareHealth().setWaitForYellowStatus().get();
+        return new EmbeddedElasticsearch(port, node);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * @return le client interne du noeud, utilisé pour l'initialisation des index.
+     */
+    Client client() {
+        return node.client();
+    }
+
+    @Override
+    public void close() {
+        node.close();
+    }
+}
@@ -0,0 +1,60 @@
+package nosql.workshop.loadtest;
+
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.IMongodConfig;
+import de.flapdoodle.embed.mongo.config.MongodConfigBuilder;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+
+import java.io.IOException;
+
+/**
+ * Serveur MongoDB piloté par le tir de charge.
+ * <p>
+ * C'est un vrai <code>mongod</code>, téléchargé au premier lancement puis gardé en cache : les requêtes
+ * géographiques (<code>$near</code>), la recherche <code>$text</code> et les agrégations des statistiques se
+ * comportent comme en production, ce que ne permet pas un serveur MongoDB simulé dans la JVM.
+ */
+class EmbeddedMongo implements AutoCloseable {
+
+    /**
+     * Version de MongoDB (constante de <code>Version.Main</code>, <code>PRODUCTION</code> par défaut).
+     */
+    static final String MONGO_VERSION = "loadtest.mongo.version";
+
+    private final int port;
+    private final MongodExecutable executable;
+
+    private EmbeddedMongo(int port, MongodExecutable executable) {
+        this.port = port;
+        this.executable = executable;
+    }
+
+    /**
+     * Démarre un serveur sur un port libre.
+     *
+     * @return le serveur démarré.
+     * @throws IOException si le serveur ne peut pas être téléchargé ou démarré.
+     */
+    static EmbeddedMongo start() throws IOException {
+        int port = Network.getFreeServerPort();
+        IMongodConfig config = new MongodConfigBuilder()
+                .version(Version.Main.valueOf(System.getProperty(MONGO_VERSION, "PRODUCTION")))
+                .net(new Net("localhost", port, Network.localhostIsIPv6()))
+                .build();
+        MongodExecutable executable = MongodStarter.getDefaultInstance().prepare(config);
+        executable.start();
+        return new EmbeddedMongo(port, executable);
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        executable.stop();
+    }
+}
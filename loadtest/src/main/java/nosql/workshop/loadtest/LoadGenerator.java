@@ -0,0 +1,140 @@
+package nosql.workshop.loadtest;
+
+import nosql.workshop.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tir de charge en boucle fermée : chaque client envoie une requête, lit toute la réponse, puis envoie la suivante.
+ * <p>
+ * La route de chaque requête est tirée selon les poids du mélange. Les requêtes de la phase de chauffe ne sont pas
+ * mesurées ; les latences de la phase de mesure sont enregistrées dans l'histogramme utilisé par l'application.
+ */
+class LoadGenerator {
+
+    private static final int TIMEOUT_MILLIS = 10_000;
+
+    private final String baseUrl;
+    private final Scenario[] draws;
+    private final Map<Scenario, RouteStats> stats = new EnumMap<>(Scenario.class);
+
+    private volatile boolean measuring;
+    private volatile boolean running;
+
+    /**
+     * @param baseUrl l'adresse de l'application, sans <code>/</code> final.
+     * @param mix     le poids de chaque route ; une route de poids nul n'est pas sollicitée.
+     */
+    LoadGenerator(String baseUrl, Map<Scenario, Integer> mix) {
+        this.baseUrl = baseUrl;
+        int total = 0;
+        for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                stats.put(entry.getKey(), new RouteStats());
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Aucune route dans le mélange de requêtes");
+        }
+        // Table de tirage : chaque route y figure autant de fois que son poids
+        draws = new Scenario[total];
+        int next = 0;
+        for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                draws[next++] = entry.getKey();
+            }
+        }
+    }
+
+    /**
+     * Lance les clients, pendant la chauffe puis pendant la mesure.
+     *
+     * @param concurrency   le nombre de clients simultanés.
+     * @param warmupMillis  la durée de la chauffe.
+     * @param measureMillis la durée de la mesure.
+     * @return la durée effective de la mesure, en nanosecondes.
+     * @throws InterruptedException si le thread appelant est interrompu.
+     */
+    long run(int concurrency, long warmupMillis, long measureMillis) throws InterruptedException {
+        running = true;
+        Thread[] clients = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            long seed = i;
+            clients[i] = new Thread(() -> client(new Random(seed)), "loadtest-client-" + i);
+            clients[i].setDaemon(true);
+            clients[i].start();
+        }
+
+        Thread.sleep(warmupMillis);
+        long start = System.nanoTime();
+        measuring = true;
+        Thread.sleep(measureMillis);
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+
+        running = false;
+        for (Thread client : clients) {
+            client.join(TIMEOUT_MILLIS);
+        }
+        return elapsed;
+    }
+
+    Map<Scenario, RouteStats> getStats() {
+        return stats;
+    }
+
+    private void client(Random random) {
+        byte[] buffer = new byte[8192];
+        while (running) {
+            Scenario scenario = draws[random.nextInt(draws.length)];
+            String path = scenario.path(random);
+            boolean counted = measuring;
+            long start = System.nanoTime();
+            boolean error = !call(path, buffer);
+            if (counted && measuring) {
+                RouteStats routeStats = stats.get(scenario);
+                routeStats.latency.recordSince(start);
+                if (error) {
+                    routeStats.errors.increment();
+                }
+            }
+        }
+    }
+
+    private boolean call(String path, byte[] buffer) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            int status = connection.getResponseCode();
+            // Réponse lue en entier, pour que la connexion soit réutilisée (keep-alive)
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (body != null) {
+                    while (body.read(buffer) != -1) {
+                        // rien
+                    }
+                }
+            }
+            return status < 400;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Mesures d'une route pendant la phase de mesure.
+     */
+    static class RouteStats {
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+    }
+}
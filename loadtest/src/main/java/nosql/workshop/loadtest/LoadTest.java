@@ -0,0 +1,123 @@
+package nosql.workshop.loadtest;
+
+import nosql.workshop.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tir de charge de l'application.
+ * <p>
+ * Sans adresse, MongoDB, Elasticsearch et l'application sont démarrés dans la JVM et alimentés avec les fichiers
+ * CSV du module <code>batch</code>. Le rapport donne, pour chaque route, le débit et les percentiles de latence.
+ * <p>
+ * Propriétés système :
+ * <ul>
+ * <li>{@value #URL} : adresse d'une application déjà démarrée, à la place de la pile embarquée ;</li>
+ * <li>{@value #CONCURRENCY} : nombre de clients simultanés ({@value #DEFAULT_CONCURRENCY} par défaut) ;</li>
+ * <li>{@value #WARMUP} : durée de la chauffe, en secondes ({@value #DEFAULT_WARMUP} par défaut) ;</li>
+ * <li>{@value #DURATION} : durée de la mesure, en secondes ({@value #DEFAULT_DURATION} par défaut) ;</li>
+ * <li>{@value #MIX} : poids de chaque route, sous la forme <code>route=poids</code> séparés par des virgules
+ * ({@value #DEFAULT_MIX} par défaut) ;</li>
+ * <li>{@value EmbeddedMongo#MONGO_VERSION} : version du serveur MongoDB embarqué.</li>
+ * </ul>
+ */
+public class LoadTest {
+
+    public static final String URL = "loadtest.url";
+    public static final String CONCURRENCY = "loadtest.concurrency";
+    public static final String WARMUP = "loadtest.warmup";
+    public static final String DURATION = "loadtest.duration";
+    public static final String MIX = "loadtest.mix";
+
+    public static final int DEFAULT_CONCURRENCY = 16;
+    public static final int DEFAULT_WARMUP = 5;
+    public static final int DEFAULT_DURATION = 30;
+    public static final String DEFAULT_MIX = "list=25,search=25,geosearch=20,stats=10,suggest=20";
+
+    private static final String LOCAL_URL = "http://localhost:8080";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty(URL);
+        int concurrency = Integer.getInteger(CONCURRENCY, DEFAULT_CONCURRENCY);
+        int warmup = Integer.getInteger(WARMUP, DEFAULT_WARMUP);
+        int duration = Integer.getInteger(DURATION, DEFAULT_DURATION);
+        Map<Scenario, Integer> mix = parseMix(System.getProperty(MIX, DEFAULT_MIX));
+
+        LocalStack stack = (url == null) ? LocalStack.start() : null;
+        try {
+            String baseUrl = (url == null) ? LOCAL_URL : url.replaceAll("/+$", "");
+            awaitReady(baseUrl);
+
+            System.out.println("Tir de charge sur " + baseUrl + " : " + concurrency + " clients, " + warmup
+                    + " s de chauffe, " + duration + " s de mesure, mélange " + mix);
+            LoadGenerator generator = new LoadGenerator(baseUrl, mix);
+            long elapsed = generator.run(concurrency, warmup * 1000L, duration * 1000L);
+            report(generator.getStats(), elapsed);
+        } finally {
+            if (stack != null) {
+                stack.close();
+            }
+        }
+        // Le serveur web de l'application ne s'arrête pas de lui-même
+        System.exit(0);
+    }
+
+    static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Mélange de requêtes invalide : " + mix);
+            }
+            weights.put(Scenario.fromLabel(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Attend que l'application réponde, au plus une minute.
+     */
+    private static void awaitReady(String baseUrl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/api/installations/stats").openConnection();
+                if (connection.getResponseCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Application pas encore démarrée
+            }
+            Thread.sleep(500);
+        }
+        throw new IllegalStateException("L'application ne répond pas : " + baseUrl);
+    }
+
+    private static void report(Map<Scenario, LoadGenerator.RouteStats> stats, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "%-10s %9s %7s %9s %9s %9s %9s %9s %9s",
+                "route", "requêtes", "erreurs", "req/s", "moy ms", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        long totalCount = 0;
+        long totalErrors = 0;
+        for (Map.Entry<Scenario, LoadGenerator.RouteStats> entry : stats.entrySet()) {
+            LatencyHistogram latency = entry.getValue().latency;
+            long errors = entry.getValue().errors.sum();
+            totalCount += latency.getCount();
+            totalErrors += errors;
+            System.out.println(String.format(Locale.ROOT, "%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f",
+                    entry.getKey().label(), latency.getCount(), errors, latency.getCount() / seconds,
+                    latency.getMeanMillis(), latency.getMillisAtQuantile(QUANTILES[0]),
+                    latency.getMillisAtQuantile(QUANTILES[1]), latency.getMillisAtQuantile(QUANTILES[2]),
+                    latency.getMaxMillis()));
+        }
+        System.out.println(String.format(Locale.ROOT, "%-10s %9d %7d %9.1f",
+                "total", totalCount, totalErrors, totalCount / seconds));
+    }
+}
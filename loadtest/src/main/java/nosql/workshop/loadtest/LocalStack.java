@@ -0,0 +1,61 @@
+package nosql.workshop.loadtest;
+
+import com.mongodb.MongoClient;
+import nosql.workshop.Application;
+import nosql.workshop.services.ElasticsearchClientProvider;
+import nosql.workshop.services.MongoDB;
+
+import java.io.IOException;
+
+/**
+ * MongoDB, Elasticsearch et l'application, démarrés dans la JVM du tir de charge.
+ * <p>
+ * Les bases sont alimentées avant le démarrage de l'application, qui s'y connecte par les propriétés système
+ * habituelles (<code>mongo.*</code> et <code>es.*</code>) et écoute sur son port par défaut.
+ */
+class LocalStack implements AutoCloseable {
+
+    private final EmbeddedMongo mongo;
+    private final EmbeddedElasticsearch elasticsearch;
+
+    private LocalStack(EmbeddedMongo mongo, EmbeddedElasticsearch elasticsearch) {
+        this.mongo = mongo;
+        this.elasticsearch = elasticsearch;
+    }
+
+    /**
+     * Démarre les bases, les alimente puis démarre l'application.
+     *
+     * @return la pile démarrée.
+     * @throws IOException si une des bases ne peut pas être démarrée.
+     */
+    static LocalStack start() throws IOException {
+        EmbeddedMongo mongo = EmbeddedMongo.start();
+        EmbeddedElasticsearch elasticsearch = EmbeddedElasticsearch.start();
+        LocalStack stack = new LocalStack(mongo, elasticsearch);
+
+        System.setProperty(MongoDB.MONGO_HOST, "localhost");
+        System.setProperty(MongoDB.MONGO_PORT, String.valueOf(mongo.getPort()));
+        System.setProperty(ElasticsearchClientProvider.ES_CLUSTER_NAME, EmbeddedElasticsearch.CLUSTER_NAME);
+        System.setProperty(ElasticsearchClientProvider.ES_HOSTS, "localhost:" + elasticsearch.getPort());
+
+        MongoClient mongoClient = new MongoClient("localhost", mongo.getPort());
+        try {
+            System.out.println("Alimentation de MongoDB...");
+            Seeder.seedMongo(mongoClient.getDB(MongoDB.DB_NAME));
+            System.out.println("Alimentation d'Elasticsearch...");
+            Seeder.seedElasticsearch(mongoClient.getDB(MongoDB.DB_NAME), elasticsearch.client());
+        } finally {
+            mongoClient.close();
+        }
+
+        Application.main(new String[0]);
+        return stack;
+    }
+
+    @Override
+    public void close() {
+        elasticsearch.close();
+        mongo.close();
+    }
+}
@@ -0,0 +1,143 @@
+package nosql.workshop.loadtest;
+
+import nosql.workshop.batch.csv.CsvTokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Routes sollicitées par le tir de charge. Les paramètres des requêtes sont tirés des fichiers CSV qui ont servi à
+ * alimenter les bases : mots des noms d'installations, points proches d'une installation, débuts de noms de villes.
+ */
+enum Scenario {
+
+    LIST("list") {
+        @Override
+        String path(Random random) {
+            return "/api/installations?page=" + (1 + random.nextInt(10)) + "&fields=summary";
+        }
+    },
+    SEARCH("search") {
+        @Override
+        String path(Random random) {
+            return "/api/installations/search?query=" + encode(pick(Data.WORDS, random)) + "&fields=summary";
+        }
+    },
+    GEOSEARCH("geosearch") {
+        @Override
+        String path(Random random) {
+            double[] point = pick(Data.POINTS, random);
+            // Jusqu'à ~2 km autour de l'installation
+            double lat = point[0] + (random.nextDouble() - 0.5) * 0.04;
+            double lng = point[1] + (random.nextDouble() - 0.5) * 0.06;
+            return String.format(Locale.ROOT, "/api/installations/geosearch?lat=%.6f&lng=%.6f&distance=5000&fields=summary", lat, lng);
+        }
+    },
+    STATS("stats") {
+        @Override
+        String path(Random random) {
+            return "/api/installations/stats";
+        }
+    },
+    SUGGEST("suggest") {
+        @Override
+        String path(Random random) {
+            String town = pick(Data.TOWNS, random);
+            return "/api/towns/suggest/" + encode(town.substring(0, Math.min(town.length(), 2 + random.nextInt(4))));
+        }
+    };
+
+    private final String label;
+
+    Scenario(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return le nom de la route dans le mélange de requêtes et dans le rapport.
+     */
+    String label() {
+        return label;
+    }
+
+    /**
+     * @param random le générateur du thread appelant.
+     * @return le chemin d'une requête, avec ses paramètres.
+     */
+    abstract String path(Random random);
+
+    static Scenario fromLabel(String label) {
+        for (Scenario scenario : values()) {
+            if (scenario.label.equals(label)) {
+                return scenario;
+            }
+        }
+        throw new IllegalArgumentException("Route inconnue : " + label);
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Paramètres lus une fois, au premier tirage.
+     */
+    private static final class Data {
+
+        static final List<String> WORDS = new ArrayList<>();
+        static final List<double[]> POINTS = new ArrayList<>();
+        static final List<String> TOWNS = new ArrayList<>();
+
+        static {
+            for (String line : lines("/csv/installations.csv")) {
+                String[] columns = CsvTokenizer.split(line);
+                for (String word : columns[0].split("[\\s'-]+")) {
+                    if (word.length() > 3) {
+                        WORDS.add(word.toLowerCase(Locale.FRENCH));
+                    }
+                }
+                if (!columns[9].isEmpty() && !columns[10].isEmpty()) {
+                    POINTS.add(new double[]{Double.parseDouble(columns[10]), Double.parseDouble(columns[9])});
+                }
+            }
+            for (String line : lines("/csv/towns_paysdeloire.csv")) {
+                TOWNS.add(CsvTokenizer.split(line)[1].toLowerCase(Locale.FRENCH));
+            }
+        }
+
+        private static List<String> lines(String resource) {
+            List<String> lines = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Scenario.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+                // Ligne d'en-tête
+                reader.readLine();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return lines;
+        }
+    }
+}
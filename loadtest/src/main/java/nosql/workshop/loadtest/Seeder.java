@@ -0,0 +1,166 @@
+package nosql.workshop.loadtest;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import nosql.workshop.batch.csv.CsvTokenizer;
+import nosql.workshop.batch.elasticsearch.ImportTowns;
+import nosql.workshop.batch.elasticsearch.util.StreamingIndexer;
+import nosql.workshop.batch.mongodb.BulkWriter;
+import nosql.workshop.batch.mongodb.InstallationsImporter;
+import nosql.workshop.batch.mongodb.InstallationsJoinImporter;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Alimente MongoDB et Elasticsearch à partir des fichiers du module <code>batch</code>, avec le code des imports.
+ * <p>
+ * Le fichier des équipements n'est pas livré avec le projet. S'il a été ajouté au classpath, les installations sont
+ * importées avec {@link InstallationsJoinImporter} ; sinon, les équipements sont reconstitués à partir du fichier
+ * des activités et répartis entre les installations de leur commune, pour que les statistiques portent sur des
+ * volumes comparables.
+ */
+final class Seeder {
+
+    private static final String EQUIPEMENTS_CSV = "/csv/equipements.csv";
+    private static final String ACTIVITES_CSV = "/csv/activites.csv";
+    private static final String MAPPINGS = "/elasticSearch/mappings.txt";
+
+    /**
+     * Commandes <code>curl</code> du fichier des mappings : nom de l'index et corps de la requête.
+     */
+    private static final Pattern CREATE_INDEX = Pattern.compile("-XPOST\\s+\\S+/(\\w+)\\s+-d\\s+'(.*?)'", Pattern.DOTALL);
+
+    private Seeder() {
+    }
+
+    /**
+     * Importe les installations et crée les index utilisés par l'application.
+     *
+     * @param db la base de l'application.
+     */
+    static void seedMongo(DB db) {
+        DBCollection installations = db.getCollection("installations");
+        int batchSize = BulkWriter.configuredBatchSize();
+        if (Seeder.class.getResource(EQUIPEMENTS_CSV) != null) {
+            new InstallationsJoinImporter(installations, batchSize).run();
+        } else {
+            new InstallationsImporter(installations, batchSize).run();
+            addEquipementsFromActivites(installations, batchSize);
+        }
+
+        // Index full-text décrit dans le README, utilisé par search.engine=mongo
+        installations.createIndex(
+                new BasicDBObject("nom", "text").append("adresse.commune", "text"),
+                new BasicDBObject("weights", new BasicDBObject("nom", 3).append("adresse.commune", 10))
+                        .append("default_language", "french"));
+        db.getCollection("imports").save(new BasicDBObject("_id", "installations").append("date", new Date()));
+    }
+
+    /**
+     * Crée les index Elasticsearch d'après le fichier des mappings, puis indexe les installations et les villes.
+     *
+     * @param db     la base de l'application, déjà alimentée.
+     * @param client un client connecté au noeud.
+     */
+    static void seedElasticsearch(DB db, Client client) {
+        Matcher matcher = CREATE_INDEX.matcher(readResource(MAPPINGS));
+        while (matcher.find()) {
+            client.admin().indices().prepareCreate(matcher.group(1)).setSource(matcher.group(2)).get();
+        }
+
+        try (StreamingIndexer indexer = new StreamingIndexer(client);
+             DBCursor cursor = db.getCollection("installations").find()) {
+            while (cursor.hasNext()) {
+                DBObject object = cursor.next();
+                object.removeField("dateMiseAJourFiche");
+                indexer.add(new IndexRequest("installations", "installation", (String) object.get("_id")).source(object.toMap()));
+            }
+        }
+        try {
+            // Connexion par les propriétés es.*, positionnées par LocalStack
+            ImportTowns.main(new String[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        client.admin().indices().prepareRefresh().get();
+    }
+
+    private static void addEquipementsFromActivites(DBCollection installations, int batchSize) {
+        // Equipements par commune, avec la liste de leurs activités
+        Map<String, Map<String, BasicDBObject>> equipementsByCommune = new HashMap<>();
+        String[] lines = readResource(ACTIVITES_CSV).split("\n");
+        for (int l = 1; l < lines.length; l++) {
+            String[] columns = CsvTokenizer.split(lines[l]);
+            // Programmation défensive : certaines lignes n'ont pas d'activités de définies
+            if (columns.length < 6 || columns[5].isEmpty()) {
+                continue;
+            }
+            BasicDBObject equipement = equipementsByCommune
+                    .computeIfAbsent(columns[1].trim(), commune -> new LinkedHashMap<>())
+                    .computeIfAbsent(columns[2].trim(), numero -> new BasicDBObject("numero", numero)
+                            .append("nom", columns[5])
+                            .append("activites", new BasicDBList()));
+            ((BasicDBList) equipement.get("activites")).add(columns[5]);
+        }
+
+        Map<String, List<String>> installationsByCommune = new HashMap<>();
+        try (DBCursor cursor = installations.find(new BasicDBObject(), new BasicDBObject("adresse.commune", 1))) {
+            for (DBObject installation : cursor) {
+                String commune = String.valueOf(((DBObject) installation.get("adresse")).get("commune")).trim();
+                installationsByCommune.computeIfAbsent(commune, key -> new ArrayList<>()).add((String) installation.get("_id"));
+            }
+        }
+
+        try (BulkWriter writer = new BulkWriter(installations, batchSize)) {
+            for (Map.Entry<String, List<String>> commune : installationsByCommune.entrySet()) {
+                List<String> ids = commune.getValue();
+                List<BasicDBList> equipements = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    equipements.add(new BasicDBList());
+                }
+                int next = 0;
+                for (BasicDBObject equipement : equipementsByCommune.getOrDefault(commune.getKey(), Collections.emptyMap()).values()) {
+                    equipements.get(next++ % ids.size()).add(equipement);
+                }
+                // Toutes les installations reçoivent un tableau, éventuellement vide : les agrégations utilisent $size
+                for (int i = 0; i < ids.size(); i++) {
+                    writer.updateOne(new BasicDBObject("_id", ids.get(i)),
+                            new BasicDBObject("$set", new BasicDBObject("equipements", equipements.get(i))));
+                }
+            }
+        }
+    }
+
+    private static String readResource(String resource) {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Seeder.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return content.toString();
+    }
+}